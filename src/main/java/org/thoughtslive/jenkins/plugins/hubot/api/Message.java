@@ -2,7 +2,6 @@ package org.thoughtslive.jenkins.plugins.hubot.api;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import hudson.EnvVars;
 import hudson.model.ParameterDefinition;
 import java.io.Serializable;
 import java.util.List;
@@ -49,7 +48,7 @@ public class Message implements Serializable {
   private String stepName;
 
   @JsonProperty("envVars")
-  private EnvVars envVars;
+  private Map<String, String> envVars;
 
   @JsonProperty("tokens")
   private Map tokens;
@@ -57,6 +56,10 @@ public class Message implements Serializable {
   @JsonProperty("ts")
   private long ts;
 
+  // Position among the messages queued for the same site and room, a gap means a dropped message.
+  @JsonProperty("seq")
+  private Long seq;
+
   // Approve step related params.
   @JsonProperty("id")
   private String id;
@@ -0,0 +1,10 @@
+package org.thoughtslive.jenkins.plugins.hubot.config;
+
+/**
+ * Request body compression used for a {@link HubotSite}.
+ *
+ * @author Naresh Rayapati
+ */
+public enum Compression {
+  NONE, GZIP
+}
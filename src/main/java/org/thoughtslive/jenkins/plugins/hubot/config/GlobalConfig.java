@@ -1,12 +1,24 @@
 package org.thoughtslive.jenkins.plugins.hubot.config;
 
+import static org.thoughtslive.jenkins.plugins.hubot.util.Common.sanitizeURL;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
 import hudson.Extension;
+import hudson.Util;
 import hudson.util.CopyOnWriteList;
+import java.util.HashSet;
+import java.util.Set;
 import jenkins.model.GlobalConfiguration;
+import jenkins.model.Jenkins;
 import lombok.Getter;
+import lombok.Setter;
 import net.sf.json.JSONObject;
 import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.StaplerRequest;
+import org.thoughtslive.jenkins.plugins.hubot.outbox.Outbox;
+import org.thoughtslive.jenkins.plugins.hubot.service.HubotClients;
+import org.thoughtslive.jenkins.plugins.hubot.service.NotificationDispatcher;
+import org.thoughtslive.jenkins.plugins.hubot.service.NotificationDispatcher.OverflowPolicy;
 
 /**
  * Hubot Steps global configuration.
@@ -16,23 +28,195 @@ import org.kohsuke.stapler.StaplerRequest;
 @Extension
 public final class GlobalConfig extends GlobalConfiguration {
 
+  public static final int DEFAULT_WORKERS = 4;
+
+  public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+  public static final int DEFAULT_BATCH_MAX_SIZE = 20;
+
+  public static final int DEFAULT_FAN_OUT_CONCURRENCY = 4;
+
+  public static final int DEFAULT_FAN_OUT_TIMEOUT_SECONDS = 30;
+
+  public static final int DEFAULT_TOKEN_TIMEOUT_SECONDS = 10;
+
+  public static final int DEFAULT_COMPLETION_TIMEOUT_SECONDS = 60;
+
+  public static final int DEFAULT_BULKHEAD_MAX_CONCURRENT = 8;
+
+  public static final int DEFAULT_BULKHEAD_MAX_QUEUE = 32;
+
+  public static final int DEFAULT_OUTBOX_MAX_SIZE_MB = 64;
+
+  public static final int DEFAULT_CIRCUIT_BREAKER_THRESHOLD = 5;
+
+  public static final int DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS = 30;
+
   @Getter
   private final CopyOnWriteList<HubotSite> sites = new CopyOnWriteList<>();
 
+  @Getter
+  @Setter
+  private int dispatcherWorkers = DEFAULT_WORKERS;
+
+  @Getter
+  @Setter
+  private int dispatcherWorkersPerUrl;
+
+  @Getter
+  @Setter
+  private int dispatcherQueueSize = DEFAULT_QUEUE_SIZE;
+
+  @Getter
+  @Setter
+  private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+
+  @Getter
+  @Setter
+  private long batchLingerMillis;
+
+  @Getter
+  @Setter
+  private int batchMaxSize = DEFAULT_BATCH_MAX_SIZE;
+
+  @Getter
+  @Setter
+  private int coalesceWindowSeconds;
+
+  @Getter
+  @Setter
+  private int fanOutConcurrency = DEFAULT_FAN_OUT_CONCURRENCY;
+
+  @Getter
+  @Setter
+  private int fanOutTimeoutSeconds = DEFAULT_FAN_OUT_TIMEOUT_SECONDS;
+
+  @Getter
+  @Setter
+  private int tokenTimeoutSeconds = DEFAULT_TOKEN_TIMEOUT_SECONDS;
+
+  @Getter
+  @Setter
+  private int completionTimeoutSeconds = DEFAULT_COMPLETION_TIMEOUT_SECONDS;
+
+  @Getter
+  @Setter
+  private int bulkheadMaxConcurrent = DEFAULT_BULKHEAD_MAX_CONCURRENT;
+
+  @Getter
+  @Setter
+  private int bulkheadMaxQueue = DEFAULT_BULKHEAD_MAX_QUEUE;
+
+  @Getter
+  @Setter
+  private boolean outboxEnabled;
+
+  @Getter
+  @Setter
+  private int outboxMaxSizeMb = DEFAULT_OUTBOX_MAX_SIZE_MB;
+
+  @Getter
+  @Setter
+  private int circuitBreakerThreshold = DEFAULT_CIRCUIT_BREAKER_THRESHOLD;
+
+  @Getter
+  @Setter
+  private int circuitBreakerOpenSeconds = DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS;
+
+  @Getter
+  @Setter
+  private String folderWeights;
+
+  @Getter
+  @Setter
+  private String envVarsInclude;
+
+  @Getter
+  @Setter
+  private String envVarsExclude;
+
+  private transient volatile SiteIndex index = SiteIndex.EMPTY;
+
   public GlobalConfig() {
     load();
   }
 
+  @Override
+  public synchronized void load() {
+    super.load();
+    index = new SiteIndex(sites.getView());
+    // Reloaded from disk, sites resolved from the previous configuration are stale.
+    SiteCache.invalidateAll();
+  }
+
   @Override
   public String getDisplayName() {
     return "Hubot Steps";
   }
 
   public HubotSite[] getSites() {
-    return sites.toArray(new HubotSite[0]);
+    return index.getSites();
+  }
+
+  /**
+   * Returns the global site with the given name, ignoring case.
+   *
+   * @param name site name.
+   * @return null if no such was found.
+   */
+  public HubotSite getSite(final String name) {
+    return index.get(name);
+  }
+
+  /**
+   * Returns the first global site marked as default.
+   *
+   * @return null if there isn't one.
+   */
+  public HubotSite getDefaultSite() {
+    return index.getDefaultSite();
+  }
+
+  /**
+   * Returns the sanitized urls of the given sites, the global sites and the sites of every folder,
+   * those whose clients must be kept.
+   *
+   * @param sites sites not saved yet.
+   */
+  static Set<String> configuredUrls(final HubotSite... sites) {
+    final Set<String> urls = new HashSet<>();
+    addUrls(urls, sites);
+    final GlobalConfig config = get();
+    if (config != null) {
+      addUrls(urls, config.getSites());
+      for (AbstractFolder<?> folder : Jenkins.get().getAllItems(AbstractFolder.class)) {
+        final HubotFolderProperty property = (HubotFolderProperty) folder.getProperties()
+            .get(HubotFolderProperty.class);
+        if (property != null) {
+          addUrls(urls, property.getSites());
+        }
+      }
+    }
+    return urls;
+  }
+
+  private static void addUrls(final Set<String> urls, final HubotSite... sites) {
+    for (HubotSite site : sites) {
+      if (site.getUrl() != null) {
+        urls.add(sanitizeURL(site.getUrl().toString()));
+      }
+    }
   }
 
-  public GlobalConfig get() {
+  /**
+   * Returns the registered instance, configuration is loaded once and kept in memory.
+   *
+   * @return null when Jenkins isn't running.
+   */
+  public static GlobalConfig get() {
+    if (Jenkins.getInstanceOrNull() == null) {
+      return null;
+    }
     return GlobalConfiguration.all().get(GlobalConfig.class);
   }
 
@@ -41,8 +225,44 @@ public final class GlobalConfig extends GlobalConfiguration {
     Stapler.CONVERT_UTILS.deregister(java.net.URL.class);
     Stapler.CONVERT_UTILS.register(new EmptyFriendlyURLConverter(), java.net.URL.class);
 
+    final HubotSite[] previous = getSites();
     sites.replaceBy(req.bindJSONToList(HubotSite.class, formData.get("sites")));
+    index = new SiteIndex(sites.getView());
+    dispatcherWorkers = Math.max(1, formData.optInt("dispatcherWorkers", DEFAULT_WORKERS));
+    dispatcherWorkersPerUrl = Math.max(0, formData.optInt("dispatcherWorkersPerUrl", 0));
+    dispatcherQueueSize = Math.max(1, formData.optInt("dispatcherQueueSize", DEFAULT_QUEUE_SIZE));
+    overflowPolicy = formData.has("overflowPolicy") ? OverflowPolicy
+        .valueOf(formData.getString("overflowPolicy")) : OverflowPolicy.DROP_NEWEST;
+    batchLingerMillis = Math.max(0, formData.optLong("batchLingerMillis", 0));
+    batchMaxSize = Math.max(1, formData.optInt("batchMaxSize", DEFAULT_BATCH_MAX_SIZE));
+    coalesceWindowSeconds = Math.max(0, formData.optInt("coalesceWindowSeconds", 0));
+    fanOutConcurrency = Math.max(1,
+        formData.optInt("fanOutConcurrency", DEFAULT_FAN_OUT_CONCURRENCY));
+    fanOutTimeoutSeconds = Math.max(1,
+        formData.optInt("fanOutTimeoutSeconds", DEFAULT_FAN_OUT_TIMEOUT_SECONDS));
+    tokenTimeoutSeconds = Math.max(1,
+        formData.optInt("tokenTimeoutSeconds", DEFAULT_TOKEN_TIMEOUT_SECONDS));
+    completionTimeoutSeconds = Math.max(0,
+        formData.optInt("completionTimeoutSeconds", DEFAULT_COMPLETION_TIMEOUT_SECONDS));
+    bulkheadMaxConcurrent = Math.max(0,
+        formData.optInt("bulkheadMaxConcurrent", DEFAULT_BULKHEAD_MAX_CONCURRENT));
+    bulkheadMaxQueue = Math.max(0,
+        formData.optInt("bulkheadMaxQueue", DEFAULT_BULKHEAD_MAX_QUEUE));
+    outboxEnabled = formData.optBoolean("outboxEnabled");
+    outboxMaxSizeMb = Math.max(1,
+        formData.optInt("outboxMaxSizeMb", DEFAULT_OUTBOX_MAX_SIZE_MB));
+    circuitBreakerThreshold = Math.max(0,
+        formData.optInt("circuitBreakerThreshold", DEFAULT_CIRCUIT_BREAKER_THRESHOLD));
+    circuitBreakerOpenSeconds = Math.max(1,
+        formData.optInt("circuitBreakerOpenSeconds", DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS));
+    folderWeights = Util.fixEmptyAndTrim(formData.optString("folderWeights"));
+    envVarsInclude = Util.fixEmptyAndTrim(formData.optString("envVarsInclude"));
+    envVarsExclude = Util.fixEmptyAndTrim(formData.optString("envVarsExclude"));
     save();
+    HubotClients.evict(configuredUrls(getSites()), previous);
+    SiteCache.invalidateAll();
+    NotificationDispatcher.reconfigure(this);
+    Outbox.reconfigure(this);
     return true;
   }
 }
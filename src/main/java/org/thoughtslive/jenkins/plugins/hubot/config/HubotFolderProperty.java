@@ -12,6 +12,7 @@ import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.StaplerRequest;
+import org.thoughtslive.jenkins.plugins.hubot.service.HubotClients;
 
 /**
  * Provides folder level Hubot configuration.
@@ -35,7 +36,14 @@ public class HubotFolderProperty extends AbstractFolderProperty<AbstractFolder<?
     Stapler.CONVERT_UTILS.deregister(java.net.URL.class);
     Stapler.CONVERT_UTILS.register(new EmptyFriendlyURLConverter(), java.net.URL.class);
 
+    final HubotSite[] previous = getSites();
     sites.replaceBy(req.bindJSONToList(HubotSite.class, formData.get("sites")));
+    HubotClients.evict(GlobalConfig.configuredUrls(getSites()), previous);
+    if (getOwner() != null) {
+      SiteCache.invalidate(getOwner().getFullName());
+    } else {
+      SiteCache.invalidateAll();
+    }
     return this;
   }
 
@@ -96,7 +96,7 @@ public class HubotJobProperty extends hudson.model.JobProperty implements Extens
       }
 
       // Query global sites.
-      for (HubotSite site : new GlobalConfig().getSites()) {
+      for (HubotSite site : GlobalConfig.get().getSites()) {
         hubotSites.add(new Option("Global - " + site.getName(), site.getName()));
       }
 
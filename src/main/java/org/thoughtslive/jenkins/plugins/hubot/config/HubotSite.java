@@ -25,6 +25,7 @@ import lombok.Data;
 import org.apache.log4j.Logger;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.thoughtslive.jenkins.plugins.hubot.api.Message;
 import org.thoughtslive.jenkins.plugins.hubot.api.ResponseData;
@@ -63,11 +64,45 @@ public class HubotSite extends AbstractDescribableImpl<HubotSite> implements Ser
 
   private List<Config> notifications;
 
+  private String envVarsInclude;
+
+  private String envVarsExclude;
+
+  private Compression compression;
+
+  private int compressionThreshold;
+
+  private int retries;
+
+  private int retryBackoffMillis;
+
+  private int siteRateLimit;
+
+  private int roomRateLimit;
+
+  private int rateLimitBurst;
+
+  private RateLimitPolicy rateLimitPolicy;
+
   @DataBoundConstructor
   public HubotSite(final boolean defaultSite, final String name, final URL url, final String room,
       final String roomPrefix,
       final boolean failOnError,
       final boolean useFolderName, final List<Config> notifications) {
+    this(defaultSite, name, url, room, roomPrefix, failOnError, useFolderName, notifications, null,
+        null, null, 0, 0, 0, 0, 0, 0, null);
+  }
+
+  /**
+   * All fields, used by the builder.
+   */
+  private HubotSite(final boolean defaultSite, final String name, final URL url,
+      final String room, final String roomPrefix, final boolean failOnError,
+      final boolean useFolderName, final List<Config> notifications, final String envVarsInclude,
+      final String envVarsExclude, final Compression compression,
+      final int compressionThreshold, final int retries, final int retryBackoffMillis,
+      final int siteRateLimit, final int roomRateLimit, final int rateLimitBurst,
+      final RateLimitPolicy rateLimitPolicy) {
 
     this.defaultSite = defaultSite;
     this.name = Util.fixEmpty(name);
@@ -77,6 +112,66 @@ public class HubotSite extends AbstractDescribableImpl<HubotSite> implements Ser
     this.failOnError = failOnError;
     this.useFolderName = useFolderName;
     this.notifications = notifications;
+    this.envVarsInclude = Util.fixEmptyAndTrim(envVarsInclude);
+    this.envVarsExclude = Util.fixEmptyAndTrim(envVarsExclude);
+    this.compression = compression;
+    this.compressionThreshold = Math.max(0, compressionThreshold);
+    this.retries = Math.max(0, retries);
+    this.retryBackoffMillis = Math.max(0, retryBackoffMillis);
+    this.siteRateLimit = Math.max(0, siteRateLimit);
+    this.roomRateLimit = Math.max(0, roomRateLimit);
+    this.rateLimitBurst = Math.max(0, rateLimitBurst);
+    this.rateLimitPolicy = rateLimitPolicy;
+  }
+
+  @DataBoundSetter
+  public void setEnvVarsInclude(final String envVarsInclude) {
+    this.envVarsInclude = Util.fixEmptyAndTrim(envVarsInclude);
+  }
+
+  @DataBoundSetter
+  public void setEnvVarsExclude(final String envVarsExclude) {
+    this.envVarsExclude = Util.fixEmptyAndTrim(envVarsExclude);
+  }
+
+  @DataBoundSetter
+  public void setCompression(final Compression compression) {
+    this.compression = compression;
+  }
+
+  @DataBoundSetter
+  public void setCompressionThreshold(final int compressionThreshold) {
+    this.compressionThreshold = Math.max(0, compressionThreshold);
+  }
+
+  @DataBoundSetter
+  public void setRetries(final int retries) {
+    this.retries = Math.max(0, retries);
+  }
+
+  @DataBoundSetter
+  public void setRetryBackoffMillis(final int retryBackoffMillis) {
+    this.retryBackoffMillis = Math.max(0, retryBackoffMillis);
+  }
+
+  @DataBoundSetter
+  public void setSiteRateLimit(final int siteRateLimit) {
+    this.siteRateLimit = Math.max(0, siteRateLimit);
+  }
+
+  @DataBoundSetter
+  public void setRoomRateLimit(final int roomRateLimit) {
+    this.roomRateLimit = Math.max(0, roomRateLimit);
+  }
+
+  @DataBoundSetter
+  public void setRateLimitBurst(final int rateLimitBurst) {
+    this.rateLimitBurst = Math.max(0, rateLimitBurst);
+  }
+
+  @DataBoundSetter
+  public void setRateLimitPolicy(final RateLimitPolicy rateLimitPolicy) {
+    this.rateLimitPolicy = rateLimitPolicy;
   }
 
   /**
@@ -101,76 +196,74 @@ public class HubotSite extends AbstractDescribableImpl<HubotSite> implements Ser
     return null;
   }
 
+  /**
+   * Gets the {@link HubotSite} with the given name, or the default one when the name is null,
+   * searching from the immediate folder up to the global configuration. Results are cached per
+   * item, see {@link SiteCache}.
+   *
+   * @return a copy of the site, null if no such was found.
+   */
   public static HubotSite get(final Job<?, ?> job, final TaskListener listener,
       final String siteName) {
-    HubotSite hubotSite = null;
-    HubotSite defaultSite = null;
+    try {
+      final HubotSite site = SiteCache
+          .get(job.getFullName(), siteName, () -> resolve(job, siteName));
+      return site == null ? null : site.clone();
+    } catch (Exception e) {
+      LOGGER.error("Unable to get hubot site", e);
+    }
+    return null;
+  }
+
+  private static HubotSite resolve(final Job<?, ?> job, final String siteName)
+      throws CloneNotSupportedException {
     ItemGroup parent = job.getParent();
     String folderName = null;
 
     // Site from folder(s).
-    try {
-      while (parent != null) {
-        if (parent instanceof AbstractFolder) {
-          AbstractFolder folder = (AbstractFolder) parent;
-          if (folderName == null) {
-            folderName = folder.getName();
-          }
-          HubotFolderProperty jfp = (HubotFolderProperty) folder.getProperties()
-              .get(HubotFolderProperty.class);
-          if (jfp != null) {
-            HubotSite[] sites = jfp.getSites();
-            if (sites != null && sites.length > 0) {
-              for (HubotSite site : sites) {
-                HubotSite cloneSite = site.clone();
-                if (cloneSite.isUseFolderName()) {
-                  cloneSite.setRoom(folder.getName());
-                }
-                if (siteName != null) {
-                  if (cloneSite.getName().equalsIgnoreCase(siteName) && hubotSite == null) {
-                    hubotSite = cloneSite;
-                  }
-                } else {
-                  if (cloneSite.isDefaultSite() && defaultSite == null) {
-                    defaultSite = cloneSite;
-                  }
-                }
+    while (parent != null) {
+      if (parent instanceof AbstractFolder) {
+        AbstractFolder folder = (AbstractFolder) parent;
+        if (folderName == null) {
+          folderName = folder.getName();
+        }
+        HubotFolderProperty jfp = (HubotFolderProperty) folder.getProperties()
+            .get(HubotFolderProperty.class);
+        if (jfp != null) {
+          for (HubotSite site : jfp.getSites()) {
+            if (siteName != null ? siteName.equalsIgnoreCase(site.getName())
+                : site.isDefaultSite()) {
+              HubotSite cloneSite = site.clone();
+              if (cloneSite.isUseFolderName()) {
+                cloneSite.setRoom(folder.getName());
               }
+              return cloneSite;
             }
           }
         }
+      }
 
-        if (parent instanceof Item) {
-          parent = ((Item) parent).getParent();
-        } else {
-          parent = null;
-        }
+      if (parent instanceof Item) {
+        parent = ((Item) parent).getParent();
+      } else {
+        parent = null;
       }
-      // Global Sites.
-      if (hubotSite == null && defaultSite == null) {
-        for (HubotSite site : new GlobalConfig().getSites()) {
-          HubotSite cloneSite = site.clone();
-          if (site.isUseFolderName()) {
-            if (folderName != null) {
-              cloneSite.setRoom(folderName);
-            }
-          }
-          if (siteName != null) {
-            if (cloneSite.getName().equalsIgnoreCase(siteName) && hubotSite == null) {
-              hubotSite = cloneSite;
-            }
-          } else {
-            if (cloneSite.isDefaultSite() && defaultSite == null) {
-              defaultSite = cloneSite;
-            }
-          }
+    }
+
+    // Global Sites.
+    final GlobalConfig globalConfig = GlobalConfig.get();
+    if (globalConfig != null) {
+      HubotSite site =
+          siteName != null ? globalConfig.getSite(siteName) : globalConfig.getDefaultSite();
+      if (site != null) {
+        HubotSite cloneSite = site.clone();
+        if (cloneSite.isUseFolderName() && folderName != null) {
+          cloneSite.setRoom(folderName);
         }
+        return cloneSite;
       }
-    } catch (Exception e) {
-      LOGGER.error("Unable to get hubot site", e);
     }
-
-    return hubotSite == null ? defaultSite : hubotSite;
+    return null;
   }
 
   @Override
@@ -178,7 +271,12 @@ public class HubotSite extends AbstractDescribableImpl<HubotSite> implements Ser
     super.clone();
     HubotSite site = HubotSite.builder().defaultSite(this.defaultSite).name(this.name).url(this.url)
         .room(this.room).roomPrefix(this.roomPrefix).failOnError(this.failOnError)
-        .useFolderName(this.useFolderName).notifications(this.notifications).build();
+        .useFolderName(this.useFolderName).notifications(this.notifications)
+        .envVarsInclude(this.envVarsInclude).envVarsExclude(this.envVarsExclude)
+        .compression(this.compression).compressionThreshold(this.compressionThreshold)
+        .retries(this.retries).retryBackoffMillis(this.retryBackoffMillis)
+        .siteRateLimit(this.siteRateLimit).roomRateLimit(this.roomRateLimit)
+        .rateLimitBurst(this.rateLimitBurst).rateLimitPolicy(this.rateLimitPolicy).build();
     return site;
   }
 
@@ -0,0 +1,25 @@
+package org.thoughtslive.jenkins.plugins.hubot.config;
+
+/**
+ * What to do with a message when the rate limit of its site or room is reached.
+ *
+ * @author Naresh Rayapati
+ */
+public enum RateLimitPolicy {
+
+  /**
+   * The caller waits until the message may be sent.
+   */
+  WAIT,
+
+  /**
+   * Build notifications are held back until the message may be sent, without occupying a
+   * dispatcher worker. Steps wait, as with {@link #WAIT}.
+   */
+  QUEUE,
+
+  /**
+   * The message is not sent.
+   */
+  DROP
+}
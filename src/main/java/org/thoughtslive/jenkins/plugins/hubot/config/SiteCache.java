@@ -0,0 +1,83 @@
+package org.thoughtslive.jenkins.plugins.hubot.config;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the effective {@link HubotSite} resolved for an item, keyed by the item full name and the
+ * requested site name. Entries are dropped when an ancestor folder, the item itself or the global
+ * configuration changes.
+ *
+ * @author Naresh Rayapati
+ */
+public final class SiteCache {
+
+  private static final char SEPARATOR = '\n';
+
+  private static final Map<String, Optional<HubotSite>> CACHE = new ConcurrentHashMap<>();
+
+  private static final AtomicLong GENERATION = new AtomicLong();
+
+  private SiteCache() {
+  }
+
+  /**
+   * Returns the cached site, or resolves and caches it. Nothing is cached when the resolver fails.
+   *
+   * @param fullName full name of the item.
+   * @param siteName requested site name, null for the default site.
+   * @param resolver resolves the site on a cache miss.
+   * @return resolved site (shared, callers must not modify it) or null.
+   */
+  static HubotSite get(final String fullName, final String siteName,
+      final Callable<HubotSite> resolver) throws Exception {
+    final String key = key(fullName, siteName);
+    Optional<HubotSite> site = CACHE.get(key);
+    if (site == null) {
+      final long generation = GENERATION.get();
+      site = Optional.ofNullable(resolver.call());
+      // Don't cache something resolved from a configuration that changed meanwhile, checked again
+      // after the put in case an invalidation cleared the cache just before it.
+      if (generation == GENERATION.get()) {
+        CACHE.put(key, site);
+        if (generation != GENERATION.get()) {
+          CACHE.remove(key, site);
+        }
+      }
+    }
+    return site.orElse(null);
+  }
+
+  /**
+   * Drops cached sites of the given item and everything below it.
+   *
+   * @param fullName full name of an item or a folder.
+   */
+  public static void invalidate(final String fullName) {
+    GENERATION.incrementAndGet();
+    final String self = fullName + SEPARATOR;
+    final String children = fullName + "/";
+    CACHE.keySet().removeIf(key -> key.startsWith(self) || key.startsWith(children));
+  }
+
+  /**
+   * Drops every cached site.
+   */
+  public static void invalidateAll() {
+    GENERATION.incrementAndGet();
+    CACHE.clear();
+  }
+
+  static int size() {
+    return CACHE.size();
+  }
+
+  private static String key(final String fullName, final String siteName) {
+    return fullName + SEPARATOR + (siteName == null ? "" : SEPARATOR + siteName
+        .toLowerCase(Locale.ENGLISH));
+  }
+}
@@ -0,0 +1,61 @@
+package org.thoughtslive.jenkins.plugins.hubot.config;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of a list of sites, indexed by (case insensitive) name.
+ *
+ * @author Naresh Rayapati
+ */
+final class SiteIndex {
+
+  static final SiteIndex EMPTY = new SiteIndex(Collections.emptyList());
+
+  private final HubotSite[] sites;
+
+  private final Map<String, HubotSite> byName;
+
+  private final HubotSite defaultSite;
+
+  SiteIndex(final List<HubotSite> sites) {
+    final Map<String, HubotSite> names = new HashMap<>();
+    HubotSite firstDefault = null;
+    for (HubotSite site : sites) {
+      if (site.getName() != null) {
+        names.putIfAbsent(key(site.getName()), site);
+      }
+      if (site.isDefaultSite() && firstDefault == null) {
+        firstDefault = site;
+      }
+    }
+    this.sites = sites.toArray(new HubotSite[0]);
+    this.byName = Collections.unmodifiableMap(names);
+    this.defaultSite = firstDefault;
+  }
+
+  HubotSite[] getSites() {
+    return sites.clone();
+  }
+
+  /**
+   * Returns the first site with the given name, ignoring case.
+   */
+  HubotSite get(final String name) {
+    return name == null ? null : byName.get(key(name));
+  }
+
+  /**
+   * Returns the first site marked as default.
+   */
+  HubotSite getDefaultSite() {
+    return defaultSite;
+  }
+
+  private static String key(final String name) {
+    return name.toLowerCase(Locale.ENGLISH);
+  }
+}
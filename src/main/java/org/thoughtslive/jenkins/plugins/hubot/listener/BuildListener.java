@@ -1,20 +1,38 @@
 package org.thoughtslive.jenkins.plugins.hubot.listener;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.AbortException;
+import hudson.EnvVars;
 import hudson.Extension;
 import hudson.Util;
 import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.model.listeners.RunListener;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.apache.log4j.Logger;
 import org.thoughtslive.jenkins.plugins.hubot.api.Message;
+import org.thoughtslive.jenkins.plugins.hubot.api.ResponseData;
+import org.thoughtslive.jenkins.plugins.hubot.config.GlobalConfig;
 import org.thoughtslive.jenkins.plugins.hubot.config.HubotSite;
 import org.thoughtslive.jenkins.plugins.hubot.config.notifications.Config;
 import org.thoughtslive.jenkins.plugins.hubot.config.notifications.Type;
 import org.thoughtslive.jenkins.plugins.hubot.service.HubotService;
+import org.thoughtslive.jenkins.plugins.hubot.service.NotificationDispatcher;
 import org.thoughtslive.jenkins.plugins.hubot.util.Common;
 import org.thoughtslive.jenkins.plugins.hubot.util.Common.STEP;
+import org.thoughtslive.jenkins.plugins.hubot.util.EnvVarsFilter;
+import org.thoughtslive.jenkins.plugins.hubot.util.FanOut;
+import org.thoughtslive.jenkins.plugins.hubot.util.RunContext;
 
 /**
  * Listener to send build notifications to hubot.
@@ -24,91 +42,313 @@ import org.thoughtslive.jenkins.plugins.hubot.util.Common.STEP;
 @Extension
 public class BuildListener extends RunListener<Run<?, ?>> {
 
+  private static final Logger LOGGER = Logger.getLogger(BuildListener.class.getName());
+
   @Override
   @SuppressFBWarnings
   public void onCompleted(Run<?, ?> run, TaskListener listener) {
-    HubotSite site = HubotSite.get(run.getParent(), listener);
+    if (Result.ABORTED.equals(run.getResult())) {
+      // Steps still talking to hubot, like async messages, don't outlive the run.
+      RunContext.cancelCalls(run);
+    }
     if (run.getPreviousBuild() != null) {
+      // Contributors see what the build added to the environment since it started.
+      RunContext.invalidateEnvironment(run);
       Type type = Type.fromResults(run.getPreviousBuild().getResult(), run.getResult());
-      if (site != null && site.getNotifications() != null) {
-        for (Config config : site.getNotifications()) {
-          if (config.isNotifyEnabled()) {
-            if (config.getNotificationType().equals(type)) {
-              if (Util.fixEmpty(config.getRoomNames()) != null) {
-                for (String roomName : config.getRoomNames().split(",")) {
-                  sendMessage(run, listener, type, site, roomName.trim(), config);
-                }
-              } else {
-                sendMessage(run, listener, type, site, null, config);
-              }
-            }
-          }
+      final HubotSite site = HubotSite.get(run.getParent(), listener);
+      final BuildLog log = new BuildLog(run, listener, site != null && site.isFailOnError());
+      try {
+        final List<CompletableFuture<Void>> sent = notify(run, log, type, site);
+        if (site != null && site.isFailOnError()) {
+          // The build still fails when hubot doesn't take its completion message.
+          await(log, sent);
         }
+      } finally {
+        log.close();
       }
     }
     super.onCompleted(run, listener);
   }
 
+  @Override
+  public void onFinalized(Run<?, ?> run) {
+    RunContext.remove(run);
+    super.onFinalized(run);
+  }
+
   @Override
   public void onStarted(Run<?, ?> run, TaskListener listener) {
-    HubotSite site = HubotSite.get(run.getParent(), listener);
-    if (site != null && site.getNotifications() != null) {
-      for (Config config : site.getNotifications()) {
-        if (config.isNotifyEnabled() && config.getNotificationType().equals(Type.STARTED)) {
-          if (Util.fixEmpty(config.getRoomNames()) != null) {
-            for (String roomName : config.getRoomNames().split(",")) {
-              sendMessage(run, listener, Type.STARTED, site, roomName.trim(), config);
-            }
-          } else {
-            sendMessage(run, listener, Type.STARTED, site, null, config);
+    final HubotSite site = HubotSite.get(run.getParent(), listener);
+    notify(run, new BuildLog(run, listener, site != null && site.isFailOnError()), Type.STARTED,
+        site);
+    super.onStarted(run, listener);
+  }
+
+  /**
+   * Waits until the queued messages are sent, their outcome is logged to the build log meanwhile.
+   */
+  private void await(final BuildLog log, final List<CompletableFuture<Void>> sent) {
+    final GlobalConfig config = GlobalConfig.get();
+    final long timeout = config == null ? GlobalConfig.DEFAULT_COMPLETION_TIMEOUT_SECONDS
+        : config.getCompletionTimeoutSeconds();
+    if (timeout <= 0) {
+      return;
+    }
+    try {
+      CompletableFuture.allOf(sent.toArray(new CompletableFuture[0]))
+          .get(timeout, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (TimeoutException e) {
+      log.listener.getLogger().println("Hubot: Not sent within " + timeout
+          + "s, the outcome is logged by Jenkins instead.");
+    } catch (ExecutionException e) {
+      // Outcomes are reported by the callbacks.
+    }
+  }
+
+  /**
+   * Prepares the messages of every enabled notification and room concurrently, then queues them in
+   * configuration order.
+   *
+   * @return completes once each queued message is sent, and its outcome reported.
+   */
+  private List<CompletableFuture<Void>> notify(Run<?, ?> run, BuildLog log, Type type,
+      final HubotSite site) {
+    final List<CompletableFuture<Void>> sent = new ArrayList<>();
+    if (site == null || site.getNotifications() == null) {
+      return sent;
+    }
+    final TaskListener listener = log.listener;
+    final List<Target> targets = new ArrayList<>();
+    for (Config config : site.getNotifications()) {
+      if (config.isNotifyEnabled() && config.getNotificationType().equals(type)) {
+        if (Util.fixEmpty(config.getRoomNames()) != null) {
+          for (String roomName : config.getRoomNames().split(",")) {
+            targets.add(new Target(config, roomName.trim()));
           }
+        } else {
+          targets.add(new Target(config, null));
         }
       }
     }
-    super.onStarted(run, listener);
+    if (targets.isEmpty()) {
+      return sent;
+    }
+    // Taken on the build thread, a task running late must not add the run back once removed.
+    final RunContext context = RunContext.of(run);
+    final List<Callable<Notification>> tasks = new ArrayList<>(targets.size());
+    for (Target target : targets) {
+      tasks.add(() -> prepare(run, context, listener, type, site, target));
+    }
+    final GlobalConfig config = GlobalConfig.get();
+    final List<Future<Notification>> notifications;
+    try {
+      notifications = FanOut.invokeAll(tasks,
+          config == null ? GlobalConfig.DEFAULT_FAN_OUT_CONCURRENCY
+              : config.getFanOutConcurrency(),
+          TimeUnit.SECONDS.toMillis(config == null ? GlobalConfig.DEFAULT_FAN_OUT_TIMEOUT_SECONDS
+              : config.getFanOutTimeoutSeconds()));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      listener.getLogger().println("Hubot: Interrupted while preparing " + type.name()
+          + " messages, nothing was sent.");
+      return sent;
+    }
+    for (int i = 0; i < targets.size(); i++) {
+      final CompletableFuture<Void> queued =
+          sendMessage(run, log, type, site, targets.get(i), notifications.get(i));
+      if (queued != null) {
+        sent.add(queued);
+      }
+    }
+    return sent;
   }
 
   /**
-   * Sends a message to given site.
+   * Creates the service and message for one room, runs on a fan-out thread.
    */
   @SuppressFBWarnings
-  private void sendMessage(Run<?, ?> run, TaskListener listener, Type type, final HubotSite site,
-      final String roomName, final Config config) {
-    if (site != null) {
-      try {
-        HubotSite cloneSite = site.clone();
-        if (Util.fixEmpty(roomName) != null) {
-          cloneSite.setRoom(roomName);
-          // To avoid using the room prefix for individual build events those explicitly specified the room name.
-          cloneSite.setRoomPrefix(null);
-        }
-        HubotService service = new HubotService(cloneSite);
-        final String buildUserName = Common
-            .prepareBuildUserName(run.getCauses(), run.getEnvironment(listener));
-        final String buildUserId = Common
-            .prepareBuildUserId(run.getCauses(), run.getEnvironment(listener));
+  private Notification prepare(Run<?, ?> run, final RunContext context, TaskListener listener,
+      Type type, final HubotSite site, final Target target) throws Exception {
+    HubotSite cloneSite = site.clone();
+    if (Util.fixEmpty(target.roomName) != null) {
+      cloneSite.setRoom(target.roomName);
+      // To avoid using the room prefix for individual build events those explicitly specified the room name.
+      cloneSite.setRoomPrefix(null);
+    }
+    HubotService service = new HubotService(cloneSite);
+    final EnvVars environment = context.getEnvironment(listener);
 
-        final Map tokens = Common.expandMacros(config.getTokens(), run, null, listener);
+    final Map tokens = Common.expandMacros(target.config.getTokens(), run, null, listener,
+        context.getExpandedTokens());
 
-        Message message = Message.builder().message(type.getStatus())
-            .ts(System.currentTimeMillis()).envVars(run.getEnvironment(listener))
-            .status(type.name()).tokens(tokens)
-            .buildCause(Common.prepareBuildCause(run.getCauses()))
-            .userId(buildUserId).userName(buildUserName).stepName(STEP.BUILD.name()).build();
+    Message message = Message.builder().message(type.getStatus())
+        .ts(System.currentTimeMillis())
+        .envVars(EnvVarsFilter.resolve(null, null, site).apply(environment))
+        .status(type.name()).tokens(tokens)
+        .buildCause(context.getBuildCause())
+        .userId(context.getBuildUserId()).userName(context.getBuildUserName(environment))
+        .stepName(STEP.BUILD.name()).build();
+    return new Notification(cloneSite, service, message);
+  }
 
+  /**
+   * Queues a prepared message to given site, on the build thread.
+   *
+   * @return completes once the message is sent, null when it wasn't queued.
+   */
+  private CompletableFuture<Void> sendMessage(Run<?, ?> run, BuildLog log, Type type,
+      final HubotSite site, final Target target, final Future<Notification> prepared) {
+    final TaskListener listener = log.listener;
+    int outcome = -1;
+    try {
+      final Notification notification = prepared.get();
+      final HubotSite cloneSite = notification.site;
+      final CompletableFuture<Void> sent = new CompletableFuture<>();
+      // Reserved before queueing, the response may come back before dispatch returns.
+      outcome = log.expect();
+      final int index = outcome;
+      if (NotificationDispatcher.get().dispatch(run.getParent().getFullName(), run.getNumber(),
+          notification.service, notification.message, response -> {
+            log.println(index, response);
+            sent.complete(null);
+          })) {
         listener.getLogger().println(
             "Hubot: Sending " + type.name() + " message to room: " + cloneSite.getRoom()
                 + " of site: "
                 + cloneSite.getName());
-        Common
-            .logResponse(service.sendMessage(message), listener.getLogger(), site.isFailOnError());
-      } catch (Exception e) {
-        listener.getLogger()
-            .println("Unable to send message to Hubot: " + Common.getRootCause(e).getMessage());
-        if (site.isFailOnError()) {
+        return sent;
+      } else {
+        log.skip(outcome);
+        listener.getLogger().println(
+            "Hubot: Suppressed repeated " + type.name() + " message to room: "
+                + cloneSite.getRoom() + " of site: " + cloneSite.getName()
+                + ", it is summarized at the end of the coalescing window.");
+      }
+    } catch (CancellationException e) {
+      onError(run, listener, site, "Hubot: Timed out preparing " + type.name()
+          + " message to room: " + (target.roomName != null ? target.roomName : site.getRoom())
+          + " of site: " + site.getName());
+    } catch (Exception e) {
+      if (outcome >= 0) {
+        // Not queued, the outcomes after it aren't held back.
+        log.skip(outcome);
+      }
+      onError(run, listener, site,
+          "Unable to send message to Hubot: " + Common.getRootCause(e).getMessage());
+    }
+    return null;
+  }
+
+  private void onError(Run<?, ?> run, TaskListener listener, final HubotSite site,
+      final String error) {
+    listener.getLogger().println(error);
+    if (site.isFailOnError()) {
+      run.setResult(Result.FAILURE);
+    }
+  }
+
+  /**
+   * Build log of one notification. Outcomes are logged in the order the messages were queued, each
+   * one once those before it are known. They go to the plugin log once the build log is closed,
+   * when {@code onCompleted} returns or the run completed, and no longer change the build result.
+   */
+  private static final class BuildLog {
+
+    /**
+     * Outcome of a message suppressed by the coalescing window, nothing is logged for it.
+     */
+    private static final ResponseData<Void> SKIPPED = ResponseData.<Void>builder().build();
+
+    private final Run<?, ?> run;
+    private final TaskListener listener;
+    private final boolean failOnError;
+
+    // Guarded by this.
+    private final List<ResponseData<Void>> outcomes = new ArrayList<>();
+    private int logged;
+    private boolean closed;
+
+    BuildLog(final Run<?, ?> run, final TaskListener listener, final boolean failOnError) {
+      this.run = run;
+      this.listener = listener;
+      this.failOnError = failOnError;
+    }
+
+    /**
+     * Reserves the place of the outcome of the next message queued.
+     *
+     * @return index of the outcome.
+     */
+    synchronized int expect() {
+      outcomes.add(null);
+      return outcomes.size() - 1;
+    }
+
+    synchronized void skip(final int index) {
+      println(index, SKIPPED);
+    }
+
+    /**
+     * Records the outcome of a message, runs on a dispatcher thread, and logs those known in order.
+     */
+    synchronized void println(final int index, final ResponseData<Void> response) {
+      outcomes.set(index, response);
+      while (logged < outcomes.size() && outcomes.get(logged) != null) {
+        final ResponseData<Void> next = outcomes.get(logged++);
+        if (next != SKIPPED) {
+          println(next);
+        }
+      }
+    }
+
+    // Guarded by this.
+    private void println(final ResponseData<Void> response) {
+      if (!closed && run.isLogUpdated()) {
+        try {
+          Common.logResponse(response, listener.getLogger(), failOnError);
+        } catch (AbortException e) {
           run.setResult(Result.FAILURE);
         }
+      } else if (!response.isSuccessful()) {
+        LOGGER.warn("Hubot: Unable to send message for " + run.getFullDisplayName()
+            + ", Error Code: " + response.getCode() + ", Error Message: " + response.getError());
       }
     }
+
+    synchronized void close() {
+      closed = true;
+    }
+  }
+
+  /**
+   * One enabled notification and room, the room is null when the site room is used.
+   */
+  private static final class Target {
+
+    private final Config config;
+    private final String roomName;
+
+    Target(final Config config, final String roomName) {
+      this.config = config;
+      this.roomName = roomName;
+    }
+  }
+
+  /**
+   * Message ready to be queued.
+   */
+  private static final class Notification {
+
+    private final HubotSite site;
+    private final HubotService service;
+    private final Message message;
+
+    Notification(final HubotSite site, final HubotService service, final Message message) {
+      this.site = site;
+      this.service = service;
+      this.message = message;
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,35 @@
+package org.thoughtslive.jenkins.plugins.hubot.listener;
+
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+import org.thoughtslive.jenkins.plugins.hubot.config.SiteCache;
+
+/**
+ * Drops resolved sites when items are renamed, moved or deleted, or when folders are
+ * reconfigured.
+ *
+ * @author Naresh Rayapati
+ */
+@Extension
+public class SiteCacheListener extends ItemListener {
+
+  @Override
+  public void onUpdated(Item item) {
+    if (item instanceof AbstractFolder) {
+      SiteCache.invalidate(item.getFullName());
+    }
+  }
+
+  @Override
+  public void onDeleted(Item item) {
+    SiteCache.invalidate(item.getFullName());
+  }
+
+  @Override
+  public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+    SiteCache.invalidate(oldFullName);
+    SiteCache.invalidate(newFullName);
+  }
+}
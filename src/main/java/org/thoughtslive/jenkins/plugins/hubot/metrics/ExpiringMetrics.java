@@ -0,0 +1,28 @@
+package org.thoughtslive.jenkins.plugins.hubot.metrics;
+
+/**
+ * Metrics removed by {@link HubotMetrics#expire(long)} once unused for a while, so that sites,
+ * rooms and folders used once don't stay registered.
+ *
+ * @author Naresh Rayapati
+ */
+abstract class ExpiringMetrics {
+
+  private volatile long usedMillis = System.currentTimeMillis();
+
+  /**
+   * Records that the metrics are still in use.
+   */
+  void used() {
+    usedMillis = System.currentTimeMillis();
+  }
+
+  /**
+   * Whether the metrics were not used since the given time.
+   *
+   * @param millis epoch milli seconds.
+   */
+  boolean isUnusedSince(final long millis) {
+    return usedMillis < millis;
+  }
+}
@@ -0,0 +1,67 @@
+package org.thoughtslive.jenkins.plugins.hubot.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+
+/**
+ * Dispatcher queue metrics of one top-level folder.
+ *
+ * @author Naresh Rayapati
+ */
+public final class FolderMetrics extends ExpiringMetrics {
+
+  @Getter
+  private final String folder;
+
+  private final LongAdder queueDepth = new LongAdder();
+
+  @Getter
+  private final Histogram waitMillis = new Histogram();
+
+  FolderMetrics(final String folder) {
+    this.folder = folder;
+  }
+
+  /**
+   * Records messages added to the queue, or removed from it when negative.
+   *
+   * @param messages number of messages.
+   */
+  public void queued(final int messages) {
+    used();
+    queueDepth.add(messages);
+  }
+
+  /**
+   * Records the time a message waited in the queue before it was sent.
+   *
+   * @param nanos time waited.
+   */
+  public void waited(final long nanos) {
+    used();
+    waitMillis.update(TimeUnit.NANOSECONDS.toMillis(nanos));
+  }
+
+  public long getQueueDepth() {
+    return queueDepth.sum();
+  }
+
+  /**
+   * Messages still queued keep the metrics in use.
+   */
+  @Override
+  boolean isUnusedSince(final long millis) {
+    return super.isUnusedSince(millis) && getQueueDepth() == 0;
+  }
+
+  Map<String, Object> snapshot() {
+    final Map<String, Object> snapshot = new LinkedHashMap<>();
+    snapshot.put("folder", folder);
+    snapshot.put("queueDepth", getQueueDepth());
+    snapshot.put("waitMillis", waitMillis.snapshot());
+    return snapshot;
+  }
+}
@@ -0,0 +1,82 @@
+package org.thoughtslive.jenkins.plugins.hubot.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram with power of two buckets, percentiles are reported as the upper bound of
+ * the bucket they fall in.
+ *
+ * @author Naresh Rayapati
+ */
+public final class Histogram {
+
+  private static final int BUCKETS = 64;
+
+  private final LongAdder[] buckets = new LongAdder[BUCKETS];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  Histogram() {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  void update(final long value) {
+    final long sample = Math.max(0, value);
+    buckets[BUCKETS - Long.numberOfLeadingZeros(sample)].increment();
+    count.increment();
+    sum.add(sample);
+    max.accumulate(sample);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    final long samples = count.sum();
+    return samples == 0 ? 0 : (double) sum.sum() / samples;
+  }
+
+  /**
+   * Returns the upper bound of the bucket holding the given quantile.
+   *
+   * @param quantile between 0 and 1.
+   * @return value, 0 without samples.
+   */
+  public long getQuantile(final double quantile) {
+    final long samples = count.sum();
+    if (samples == 0) {
+      return 0;
+    }
+    final long rank = (long) Math.ceil(quantile * samples);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += buckets[i].sum();
+      if (seen >= rank) {
+        return Math.min((1L << i) - 1, max.get());
+      }
+    }
+    return max.get();
+  }
+
+  Map<String, Object> snapshot() {
+    final Map<String, Object> snapshot = new LinkedHashMap<>();
+    snapshot.put("count", getCount());
+    snapshot.put("mean", getMean());
+    snapshot.put("p50", getQuantile(0.5));
+    snapshot.put("p95", getQuantile(0.95));
+    snapshot.put("p99", getQuantile(0.99));
+    snapshot.put("max", getMax());
+    return snapshot;
+  }
+}
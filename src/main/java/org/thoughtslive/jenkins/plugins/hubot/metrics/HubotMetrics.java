@@ -0,0 +1,263 @@
+package org.thoughtslive.jenkins.plugins.hubot.metrics;
+
+import static org.thoughtslive.jenkins.plugins.hubot.util.Common.sanitizeURL;
+
+import hudson.PluginWrapper;
+import hudson.Util;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import jenkins.model.Jenkins;
+import org.apache.log4j.Logger;
+import org.thoughtslive.jenkins.plugins.hubot.config.HubotSite;
+
+/**
+ * Per site and room send metrics, per url concurrency metrics and per folder queue metrics,
+ * published to the Metrics plugin when it is installed and always available as JSON from
+ * {@link HubotMetricsAction}.
+ *
+ * @author Naresh Rayapati
+ */
+public final class HubotMetrics {
+
+  private static final Logger LOGGER = Logger.getLogger(HubotMetrics.class.getName());
+
+  private static final Map<String, RoomMetrics> ROOMS = new ConcurrentHashMap<>();
+
+  private static final Map<String, SiteMetrics> SITES = new ConcurrentHashMap<>();
+
+  private static final Map<String, FolderMetrics> FOLDERS = new ConcurrentHashMap<>();
+
+  // Held to create or expire metrics, so that gauges are never removed after being registered.
+  private static final Object LOCK = new Object();
+
+  private HubotMetrics() {
+  }
+
+  /**
+   * Returns the metrics of the given room, sites without a name are identified by their url.
+   *
+   * @param site site used to send.
+   * @param room actual room.
+   * @return metrics, never null.
+   */
+  public static RoomMetrics get(final HubotSite site, final String room) {
+    return get(name(site), room);
+  }
+
+  private static String name(final HubotSite site) {
+    final String name = Util.fixEmptyAndTrim(site.getName());
+    return name != null ? name : String.valueOf(site.getUrl());
+  }
+
+  static RoomMetrics get(final String site, final String room) {
+    final String key = site + "|" + room;
+    RoomMetrics metrics = ROOMS.get(key);
+    if (metrics == null) {
+      synchronized (LOCK) {
+        metrics = ROOMS.get(key);
+        if (metrics == null) {
+          metrics = new RoomMetrics(site, room);
+          ROOMS.put(key, metrics);
+          if (isMetricsPluginActive()) {
+            try {
+              MetricsPluginSupport.register(metrics);
+            } catch (RuntimeException | LinkageError e) {
+              LOGGER.warn("Hubot: unable to publish metrics of room " + room, e);
+            }
+          }
+        }
+      }
+    }
+    metrics.used();
+    return metrics;
+  }
+
+  /**
+   * Returns the concurrency metrics of the url of the given site, shared with the other sites
+   * using the same url like its client.
+   *
+   * @param site site used to send.
+   * @return metrics, never null.
+   */
+  public static SiteMetrics site(final HubotSite site) {
+    return site(sanitizeURL(String.valueOf(site.getUrl())));
+  }
+
+  static SiteMetrics site(final String url) {
+    SiteMetrics metrics = SITES.get(url);
+    if (metrics == null) {
+      synchronized (LOCK) {
+        metrics = SITES.get(url);
+        if (metrics == null) {
+          metrics = new SiteMetrics(url);
+          SITES.put(url, metrics);
+          if (isMetricsPluginActive()) {
+            try {
+              MetricsPluginSupport.register(metrics);
+            } catch (RuntimeException | LinkageError e) {
+              LOGGER.warn("Hubot: unable to publish metrics of url " + url, e);
+            }
+          }
+        }
+      }
+    }
+    metrics.used();
+    return metrics;
+  }
+
+  /**
+   * Returns the concurrency metrics of every url used recently.
+   */
+  public static List<SiteMetrics> getSites() {
+    final List<SiteMetrics> sites = new ArrayList<>(SITES.values());
+    sites.sort((first, second) -> first.getUrl().compareTo(second.getUrl()));
+    return Collections.unmodifiableList(sites);
+  }
+
+  /**
+   * Returns the dispatcher queue metrics of the given top-level folder.
+   *
+   * @param folder name of the folder.
+   * @return metrics, never null.
+   */
+  public static FolderMetrics folder(final String folder) {
+    FolderMetrics metrics = FOLDERS.get(folder);
+    if (metrics == null) {
+      synchronized (LOCK) {
+        metrics = FOLDERS.get(folder);
+        if (metrics == null) {
+          metrics = new FolderMetrics(folder);
+          FOLDERS.put(folder, metrics);
+          if (isMetricsPluginActive()) {
+            try {
+              MetricsPluginSupport.register(metrics);
+            } catch (RuntimeException | LinkageError e) {
+              LOGGER.warn("Hubot: unable to publish metrics of folder " + folder, e);
+            }
+          }
+        }
+      }
+    }
+    metrics.used();
+    return metrics;
+  }
+
+  /**
+   * Returns the metrics of every folder which queued messages recently.
+   */
+  public static List<FolderMetrics> getFolders() {
+    final List<FolderMetrics> folders = new ArrayList<>(FOLDERS.values());
+    folders.sort((first, second) -> first.getFolder().compareTo(second.getFolder()));
+    return Collections.unmodifiableList(folders);
+  }
+
+  /**
+   * Returns the metrics of every room used recently.
+   */
+  public static List<RoomMetrics> getAll() {
+    final List<RoomMetrics> rooms = new ArrayList<>(ROOMS.values());
+    rooms.sort((first, second) -> first.getSite().equals(second.getSite())
+        ? first.getRoom().compareTo(second.getRoom())
+        : first.getSite().compareTo(second.getSite()));
+    return Collections.unmodifiableList(rooms);
+  }
+
+  /**
+   * Removes the metrics of sites, rooms and folders unused since the given time, with their gauges.
+   * Those used again start from zero.
+   *
+   * @param unusedSince epoch milli seconds.
+   */
+  static void expire(final long unusedSince) {
+    final boolean published = isMetricsPluginActive();
+    synchronized (LOCK) {
+      for (Iterator<RoomMetrics> rooms = ROOMS.values().iterator(); rooms.hasNext(); ) {
+        final RoomMetrics room = rooms.next();
+        if (room.isUnusedSince(unusedSince)) {
+          rooms.remove();
+          if (published) {
+            try {
+              MetricsPluginSupport.unregister(room);
+            } catch (RuntimeException | LinkageError e) {
+              LOGGER.warn("Hubot: unable to remove metrics of room " + room.getRoom(), e);
+            }
+          }
+        }
+      }
+      for (Iterator<SiteMetrics> sites = SITES.values().iterator(); sites.hasNext(); ) {
+        final SiteMetrics site = sites.next();
+        if (site.isUnusedSince(unusedSince)) {
+          sites.remove();
+          if (published) {
+            try {
+              MetricsPluginSupport.unregister(site);
+            } catch (RuntimeException | LinkageError e) {
+              LOGGER.warn("Hubot: unable to remove metrics of url " + site.getUrl(), e);
+            }
+          }
+        }
+      }
+      for (Iterator<FolderMetrics> folders = FOLDERS.values().iterator(); folders.hasNext(); ) {
+        final FolderMetrics folder = folders.next();
+        if (folder.isUnusedSince(unusedSince)) {
+          folders.remove();
+          if (published) {
+            try {
+              MetricsPluginSupport.unregister(folder);
+            } catch (RuntimeException | LinkageError e) {
+              LOGGER.warn("Hubot: unable to remove metrics of folder " + folder.getFolder(), e);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  static List<Map<String, Object>> snapshot() {
+    final List<Map<String, Object>> snapshot = new ArrayList<>();
+    for (RoomMetrics room : getAll()) {
+      snapshot.add(room.snapshot());
+    }
+    return snapshot;
+  }
+
+  static List<Map<String, Object>> siteSnapshot() {
+    final List<Map<String, Object>> snapshot = new ArrayList<>();
+    for (SiteMetrics site : getSites()) {
+      snapshot.add(site.snapshot());
+    }
+    return snapshot;
+  }
+
+  static List<Map<String, Object>> folderSnapshot() {
+    final List<Map<String, Object>> snapshot = new ArrayList<>();
+    for (FolderMetrics folder : getFolders()) {
+      snapshot.add(folder.snapshot());
+    }
+    return snapshot;
+  }
+
+  static void published(final RoomMetrics room, final String name, final LongAdder counter) {
+    if (isMetricsPluginActive()) {
+      try {
+        MetricsPluginSupport.counter(room, name, counter);
+      } catch (RuntimeException | LinkageError e) {
+        LOGGER.warn("Hubot: unable to publish metric " + name, e);
+      }
+    }
+  }
+
+  private static boolean isMetricsPluginActive() {
+    final Jenkins jenkins = Jenkins.getInstanceOrNull();
+    if (jenkins == null) {
+      return false;
+    }
+    final PluginWrapper plugin = jenkins.getPluginManager().getPlugin("metrics");
+    return plugin != null && plugin.isActive();
+  }
+}
@@ -0,0 +1,46 @@
+package org.thoughtslive.jenkins.plugins.hubot.metrics;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.thoughtslive.jenkins.plugins.hubot.util.Json;
+
+/**
+ * Serves the send metrics of every room, the concurrency metrics of every site and the queue
+ * metrics of every folder as JSON at {@code /hubot-metrics/}.
+ *
+ * @author Naresh Rayapati
+ */
+@Extension
+public class HubotMetricsAction implements RootAction {
+
+  @Override
+  public String getIconFileName() {
+    return null;
+  }
+
+  @Override
+  public String getDisplayName() {
+    return "Hubot Metrics";
+  }
+
+  @Override
+  public String getUrlName() {
+    return "hubot-metrics";
+  }
+
+  public void doIndex(final StaplerRequest req, final StaplerResponse rsp) throws IOException {
+    Jenkins.get().checkPermission(Jenkins.SYSTEM_READ);
+    rsp.setContentType("application/json;charset=UTF-8");
+    final Map<String, Object> metrics = new LinkedHashMap<>();
+    metrics.put("rooms", HubotMetrics.snapshot());
+    metrics.put("sites", HubotMetrics.siteSnapshot());
+    metrics.put("folders", HubotMetrics.folderSnapshot());
+    Json.WRITER.writeValue(rsp.getWriter(), metrics);
+  }
+}
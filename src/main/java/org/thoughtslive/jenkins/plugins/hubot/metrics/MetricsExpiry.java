@@ -0,0 +1,26 @@
+package org.thoughtslive.jenkins.plugins.hubot.metrics;
+
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically removes the metrics of sites, rooms and folders unused for a day.
+ *
+ * @author Naresh Rayapati
+ */
+@Extension
+public class MetricsExpiry extends PeriodicWork {
+
+  static final long UNUSED_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+  @Override
+  public long getRecurrencePeriod() {
+    return TimeUnit.HOURS.toMillis(1);
+  }
+
+  @Override
+  protected void doRun() {
+    HubotMetrics.expire(System.currentTimeMillis() - UNUSED_MILLIS);
+  }
+}
@@ -0,0 +1,94 @@
+package org.thoughtslive.jenkins.plugins.hubot.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import java.util.concurrent.atomic.LongAdder;
+import jenkins.metrics.api.Metrics;
+
+/**
+ * Publishes room, site and folder metrics as gauges of the Metrics plugin, only loaded when the
+ * plugin is active.
+ *
+ * @author Naresh Rayapati
+ */
+final class MetricsPluginSupport {
+
+  private MetricsPluginSupport() {
+  }
+
+  static void register(final RoomMetrics room) {
+    room.forEachCounter((name, counter) -> counter(room, name, counter));
+    histogram(name(room, "latencyMillis"), room.getLatencyMillis());
+    histogram(name(room, "payloadBytes"), room.getPayloadBytes());
+  }
+
+  static void register(final SiteMetrics site) {
+    register(name(site, "concurrencyLimit"), (Gauge<Integer>) site::getConcurrencyLimit);
+    register(name(site, "rttMillis"), (Gauge<Long>) site::getRttMillis);
+    register(name(site, "rejected"), (Gauge<Long>) site::getRejected);
+  }
+
+  static void register(final FolderMetrics folder) {
+    register(name(folder, "queueDepth"), (Gauge<Long>) folder::getQueueDepth);
+    histogram(name(folder, "waitMillis"), folder.getWaitMillis());
+  }
+
+  static void unregister(final RoomMetrics room) {
+    room.forEachCounter((name, counter) -> remove(name(room, name)));
+    removeHistogram(name(room, "latencyMillis"));
+    removeHistogram(name(room, "payloadBytes"));
+  }
+
+  static void unregister(final SiteMetrics site) {
+    remove(name(site, "concurrencyLimit"));
+    remove(name(site, "rttMillis"));
+    remove(name(site, "rejected"));
+  }
+
+  static void unregister(final FolderMetrics folder) {
+    remove(name(folder, "queueDepth"));
+    removeHistogram(name(folder, "waitMillis"));
+  }
+
+  static void counter(final RoomMetrics room, final String name, final LongAdder counter) {
+    register(name(room, name), (Gauge<Long>) counter::sum);
+  }
+
+  private static void histogram(final String name, final Histogram histogram) {
+    register(name + ".count", (Gauge<Long>) histogram::getCount);
+    register(name + ".mean", (Gauge<Double>) histogram::getMean);
+    register(name + ".p50", (Gauge<Long>) () -> histogram.getQuantile(0.5));
+    register(name + ".p95", (Gauge<Long>) () -> histogram.getQuantile(0.95));
+    register(name + ".p99", (Gauge<Long>) () -> histogram.getQuantile(0.99));
+    register(name + ".max", (Gauge<Long>) histogram::getMax);
+  }
+
+  private static void removeHistogram(final String name) {
+    for (String suffix : new String[] {"count", "mean", "p50", "p95", "p99", "max"}) {
+      remove(name + "." + suffix);
+    }
+  }
+
+  private static String name(final RoomMetrics room, final String name) {
+    return MetricRegistry.name("hubot", room.getSite(), room.getRoom(), name);
+  }
+
+  private static String name(final SiteMetrics site, final String name) {
+    return MetricRegistry.name("hubot", "url", site.getUrl(), name);
+  }
+
+  private static String name(final FolderMetrics folder, final String name) {
+    return MetricRegistry.name("hubot", "folder", folder.getFolder(), name);
+  }
+
+  private static void register(final String name, final Metric metric) {
+    final MetricRegistry registry = Metrics.metricRegistry();
+    registry.remove(name);
+    registry.register(name, metric);
+  }
+
+  private static void remove(final String name) {
+    Metrics.metricRegistry().remove(name);
+  }
+}
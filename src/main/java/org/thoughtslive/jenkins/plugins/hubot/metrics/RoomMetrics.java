@@ -0,0 +1,218 @@
+package org.thoughtslive.jenkins.plugins.hubot.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+import org.thoughtslive.jenkins.plugins.hubot.util.Common;
+
+/**
+ * Send metrics of one room of a site.
+ *
+ * @author Naresh Rayapati
+ */
+public final class RoomMetrics extends ExpiringMetrics {
+
+  @Getter
+  private final String site;
+
+  @Getter
+  private final String room;
+
+  private final LongAdder attempts = new LongAdder();
+  private final LongAdder successes = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder throttled = new LongAdder();
+  private final LongAdder suppressed = new LongAdder();
+  private final LongAdder shed = new LongAdder();
+  private final ConcurrentMap<String, LongAdder> failuresByCode = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, LongAdder> failuresByException = new ConcurrentHashMap<>();
+
+  @Getter
+  private final Histogram latencyMillis = new Histogram();
+
+  @Getter
+  private final Histogram payloadBytes = new Histogram();
+
+  RoomMetrics(final String site, final String room) {
+    this.site = site;
+    this.room = room;
+  }
+
+  /**
+   * Records one request to hubot.
+   *
+   * @param successful whether hubot accepted the request.
+   * @param code HTTP status code, ignored when the request failed with an exception.
+   * @param error exception thrown by the request, null when hubot responded.
+   * @param nanos time taken by the request.
+   * @param bytes size of the request body, negative when unknown.
+   */
+  public void record(final boolean successful, final int code, final Exception error,
+      final long nanos, final long bytes) {
+    attempts.increment();
+    latencyMillis.update(TimeUnit.NANOSECONDS.toMillis(nanos));
+    if (bytes >= 0) {
+      payloadBytes.update(bytes);
+    }
+    if (successful) {
+      successes.increment();
+      return;
+    }
+    failures.increment();
+    if (error != null) {
+      counter(failuresByException, "failuresByException",
+          Common.getRootCause(error).getClass().getSimpleName()).increment();
+    } else {
+      counter(failuresByCode, "failuresByCode", String.valueOf(code)).increment();
+    }
+  }
+
+  /**
+   * Records messages dropped before they were sent.
+   *
+   * @param messages number of messages.
+   */
+  public void dropped(final int messages) {
+    dropped.add(messages);
+  }
+
+  /**
+   * Records a request not sent because the circuit breaker is open.
+   */
+  public void rejected() {
+    rejected.increment();
+  }
+
+  /**
+   * Records messages delayed by the rate limit.
+   *
+   * @param messages number of messages.
+   */
+  public void throttled(final int messages) {
+    throttled.add(messages);
+  }
+
+  /**
+   * Records a message not sent because too many requests to the url were in flight.
+   */
+  public void shed() {
+    shed.increment();
+  }
+
+  /**
+   * Records repeated build notifications merged into a summary message.
+   *
+   * @param messages number of messages.
+   */
+  public void suppressed(final int messages) {
+    suppressed.add(messages);
+  }
+
+  public long getAttempts() {
+    return attempts.sum();
+  }
+
+  public long getSuccesses() {
+    return successes.sum();
+  }
+
+  public long getFailures() {
+    return failures.sum();
+  }
+
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  public long getThrottled() {
+    return throttled.sum();
+  }
+
+  public long getSuppressed() {
+    return suppressed.sum();
+  }
+
+  public long getShed() {
+    return shed.sum();
+  }
+
+  public Map<String, Long> getFailuresByCode() {
+    return sums(failuresByCode);
+  }
+
+  public Map<String, Long> getFailuresByException() {
+    return sums(failuresByException);
+  }
+
+  Map<String, Object> snapshot() {
+    final Map<String, Object> snapshot = new LinkedHashMap<>();
+    snapshot.put("site", site);
+    snapshot.put("room", room);
+    snapshot.put("attempts", getAttempts());
+    snapshot.put("successes", getSuccesses());
+    snapshot.put("failures", getFailures());
+    snapshot.put("dropped", getDropped());
+    snapshot.put("rejected", getRejected());
+    snapshot.put("throttled", getThrottled());
+    snapshot.put("suppressed", getSuppressed());
+    snapshot.put("shed", getShed());
+    snapshot.put("failuresByCode", getFailuresByCode());
+    snapshot.put("failuresByException", getFailuresByException());
+    snapshot.put("latencyMillis", latencyMillis.snapshot());
+    snapshot.put("payloadBytes", payloadBytes.snapshot());
+    return snapshot;
+  }
+
+  void forEachCounter(final CounterVisitor visitor) {
+    visitor.visit("attempts", attempts);
+    visitor.visit("successes", successes);
+    visitor.visit("failures", failures);
+    visitor.visit("dropped", dropped);
+    visitor.visit("rejected", rejected);
+    visitor.visit("throttled", throttled);
+    visitor.visit("suppressed", suppressed);
+    visitor.visit("shed", shed);
+    failuresByCode.forEach((key, counter) -> visitor.visit("failuresByCode." + key, counter));
+    failuresByException
+        .forEach((key, counter) -> visitor.visit("failuresByException." + key, counter));
+  }
+
+  private LongAdder counter(final ConcurrentMap<String, LongAdder> counters, final String group,
+      final String key) {
+    LongAdder counter = counters.get(key);
+    if (counter == null) {
+      final LongAdder created = new LongAdder();
+      counter = counters.putIfAbsent(key, created);
+      if (counter == null) {
+        counter = created;
+        HubotMetrics.published(this, group + "." + key, created);
+      }
+    }
+    return counter;
+  }
+
+  private static Map<String, Long> sums(final Map<String, LongAdder> counters) {
+    final Map<String, Long> sums = new TreeMap<>();
+    counters.forEach((key, counter) -> sums.put(key, counter.sum()));
+    return sums;
+  }
+
+  /**
+   * Receives every counter with its name.
+   */
+  interface CounterVisitor {
+
+    void visit(String name, LongAdder counter);
+  }
+}
@@ -0,0 +1,56 @@
+package org.thoughtslive.jenkins.plugins.hubot.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+
+/**
+ * Adaptive concurrency metrics of one hubot url, shared by every site using it: the limit of
+ * requests in flight, the measured round trip time and the requests rejected by its bulkhead.
+ *
+ * @author Naresh Rayapati
+ */
+public final class SiteMetrics extends ExpiringMetrics {
+
+  @Getter
+  private final String url;
+
+  @Getter
+  private volatile int concurrencyLimit;
+
+  private volatile long rttNanos;
+
+  @Getter
+  private volatile long rejected;
+
+  SiteMetrics(final String url) {
+    this.url = url;
+  }
+
+  /**
+   * Records the state of the url after a request or a rejection.
+   *
+   * @param concurrencyLimit current limit, {@code 0} when unlimited.
+   * @param rttNanos smoothed round trip time.
+   * @param rejected requests rejected so far by the bulkhead of the url.
+   */
+  public void limited(final int concurrencyLimit, final long rttNanos, final long rejected) {
+    this.concurrencyLimit = concurrencyLimit;
+    this.rttNanos = rttNanos;
+    this.rejected = rejected;
+  }
+
+  public long getRttMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(rttNanos);
+  }
+
+  Map<String, Object> snapshot() {
+    final Map<String, Object> snapshot = new LinkedHashMap<>();
+    snapshot.put("url", url);
+    snapshot.put("concurrencyLimit", concurrencyLimit);
+    snapshot.put("rttMillis", getRttMillis());
+    snapshot.put("rejected", rejected);
+    return snapshot;
+  }
+}
@@ -0,0 +1,512 @@
+package org.thoughtslive.jenkins.plugins.hubot.outbox;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import jenkins.model.Jenkins;
+import org.apache.log4j.Logger;
+import org.thoughtslive.jenkins.plugins.hubot.api.Message;
+import org.thoughtslive.jenkins.plugins.hubot.api.ResponseData;
+import org.thoughtslive.jenkins.plugins.hubot.config.GlobalConfig;
+import org.thoughtslive.jenkins.plugins.hubot.config.HubotSite;
+import org.thoughtslive.jenkins.plugins.hubot.service.HubotService;
+import org.thoughtslive.jenkins.plugins.hubot.util.Common;
+import org.thoughtslive.jenkins.plugins.hubot.util.Json;
+
+/**
+ * Append only journal under {@code JENKINS_HOME/hubot-outbox} of notifications that could not
+ * be delivered. Entries are redelivered in order per hubot url by a background worker, see
+ * {@link OutboxDrainer}.
+ *
+ * <p>The journal is split in segments of about {@link #SEGMENT_SIZE} bytes holding one record per
+ * line: {@code E <json entry>} for a message and {@code D <id>} once it is delivered or purged.
+ * Segments without pending entries are deleted, and the oldest segments are dropped when the
+ * journal grows beyond its maximum size.
+ *
+ * @author Naresh Rayapati
+ */
+public final class Outbox {
+
+  private static final Logger LOGGER = Logger.getLogger(Outbox.class.getName());
+
+  static final long SEGMENT_SIZE = 1024 * 1024;
+
+  private static final long MB = 1024 * 1024;
+
+  private static final String SEGMENT_PREFIX = "segment-";
+
+  private static final String SEGMENT_SUFFIX = ".log";
+
+  private static final String ENTRY = "E ";
+
+  private static final String DONE = "D ";
+
+  private static Outbox instance;
+
+  private final Path directory;
+
+  private volatile long maxBytes;
+
+  // Segment files by the first entry id they may hold, the last one is appended to.
+  private final TreeMap<Long, Path> segments = new TreeMap<>();
+
+  private final TreeMap<Long, Location> pending = new TreeMap<>();
+
+  // Entries being delivered by the drainer or a replay, guarded by this.
+  private final Set<Long> delivering = new HashSet<>();
+
+  private final AtomicBoolean draining = new AtomicBoolean();
+
+  private final ExecutorService drainer = Executors.newSingleThreadExecutor(
+      new NamingThreadFactory(new DaemonThreadFactory(), "Hubot outbox drainer"));
+
+  private FileChannel active;
+
+  private long nextId = 1;
+
+  private long totalBytes;
+
+  Outbox(final Path directory, final long maxBytes) throws IOException {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    load();
+  }
+
+  /**
+   * Returns the outbox, opened on first use.
+   *
+   * @return null when the outbox is disabled or Jenkins isn't running.
+   */
+  public static synchronized Outbox get() {
+    final GlobalConfig config = GlobalConfig.get();
+    if (config == null || !config.isOutboxEnabled()) {
+      return null;
+    }
+    if (instance == null) {
+      try {
+        instance = new Outbox(Jenkins.get().getRootDir().toPath().resolve("hubot-outbox"),
+            config.getOutboxMaxSizeMb() * MB);
+      } catch (IOException e) {
+        LOGGER.error("Hubot: unable to open the outbox", e);
+        return null;
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Applies the maximum size of the given configuration to the opened outbox.
+   */
+  public static synchronized void reconfigure(final GlobalConfig config) {
+    if (instance != null) {
+      instance.maxBytes = config.getOutboxMaxSizeMb() * MB;
+    }
+  }
+
+  /**
+   * Stores a message which could not be delivered.
+   *
+   * @param site site the message was sent with.
+   * @param room actual room.
+   * @param message message to deliver later.
+   * @return false when it could not be stored.
+   */
+  public boolean offer(final HubotSite site, final String room, final Message message) {
+    final OutboxEntry entry = OutboxEntry.of(site, room, message);
+    try {
+      synchronized (this) {
+        final long id = nextId;
+        entry.setId(id);
+        final byte[] line = (ENTRY + Json.WRITER.writeValueAsString(entry) + "\n")
+            .getBytes(UTF_8);
+        if (!reserve(line.length)) {
+          LOGGER.warn("Hubot: outbox is full, message to room " + room + " dropped.");
+          return false;
+        }
+        final long offset = append(line, id);
+        nextId++;
+        active.force(false);
+        pending.put(entry.getId(), new Location(segments.lastEntry().getValue(), offset,
+            line.length));
+      }
+      return true;
+    } catch (IOException e) {
+      LOGGER.error("Hubot: unable to store message to room " + room + " in the outbox", e);
+      return false;
+    }
+  }
+
+  public synchronized int size() {
+    return pending.size();
+  }
+
+  public synchronized long getSizeInBytes() {
+    return totalBytes;
+  }
+
+  public long getMaxSizeInBytes() {
+    return maxBytes;
+  }
+
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Returns the oldest pending entries.
+   *
+   * @param limit maximum number of entries.
+   * @return entries in delivery order.
+   */
+  public List<OutboxEntry> getEntries(final int limit) {
+    final List<Location> locations = new ArrayList<>();
+    synchronized (this) {
+      for (Location location : pending.values()) {
+        if (locations.size() >= limit) {
+          break;
+        }
+        locations.add(location);
+      }
+    }
+    final List<OutboxEntry> entries = new ArrayList<>();
+    for (Location location : locations) {
+      try {
+        entries.add(read(location));
+      } catch (IOException e) {
+        // Purged or compacted meanwhile.
+        LOGGER.debug("Hubot: unable to read outbox entry", e);
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Starts delivering pending entries in the background, unless it is already running.
+   */
+  public void requestDrain() {
+    if (!draining.get()) {
+      drainer.execute(this::drain);
+    }
+  }
+
+  /**
+   * Delivers pending entries in order. Once an entry for a url fails, later entries for the same
+   * url wait for the next run so they are never delivered out of order.
+   */
+  void drain() {
+    if (!draining.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      final Set<String> unavailable = new HashSet<>();
+      long after = 0;
+      Map.Entry<Long, Location> next;
+      while ((next = higher(after)) != null) {
+        after = next.getKey();
+        final Location location = claim(after);
+        if (location == null) {
+          // Replayed right now, later entries for its url wait for the next run.
+          unavailableAfter(after, unavailable);
+          continue;
+        }
+        try {
+          final OutboxEntry entry;
+          try {
+            entry = read(location);
+          } catch (IOException e) {
+            LOGGER.error("Hubot: unreadable outbox entry " + after + " skipped", e);
+            complete(after);
+            continue;
+          }
+          if (unavailable.contains(entry.getUrl()) || !deliver(entry)) {
+            unavailable.add(entry.getUrl());
+          }
+        } finally {
+          release(after);
+        }
+      }
+    } finally {
+      draining.set(false);
+    }
+  }
+
+  /**
+   * Delivers one entry now, regardless of its position.
+   *
+   * @param id entry id.
+   * @return whether it was delivered or dropped because hubot rejected it.
+   */
+  public boolean replay(final long id) throws IOException {
+    final Location location = claim(id);
+    if (location == null) {
+      return false;
+    }
+    try {
+      return deliver(read(location));
+    } finally {
+      release(id);
+    }
+  }
+
+  /**
+   * Reserves a pending entry for delivery, so the drainer and a replay never send it both.
+   *
+   * @return location of the entry, null when it isn't pending or already being delivered.
+   */
+  private synchronized Location claim(final long id) {
+    final Location location = pending.get(id);
+    return location != null && delivering.add(id) ? location : null;
+  }
+
+  private synchronized void release(final long id) {
+    delivering.remove(id);
+  }
+
+  /**
+   * Marks the url of an entry delivered elsewhere as unavailable for the rest of the run.
+   */
+  private void unavailableAfter(final long id, final Set<String> unavailable) {
+    final Location location;
+    synchronized (this) {
+      location = pending.get(id);
+    }
+    if (location == null) {
+      return;
+    }
+    try {
+      unavailable.add(read(location).getUrl());
+    } catch (IOException e) {
+      // Delivered and compacted meanwhile.
+      LOGGER.debug("Hubot: unable to read outbox entry " + id, e);
+    }
+  }
+
+  /**
+   * Removes one entry without delivering it.
+   */
+  public void purge(final long id) {
+    complete(id);
+  }
+
+  /**
+   * Removes every entry without delivering them.
+   */
+  public synchronized void purgeAll() throws IOException {
+    pending.clear();
+    compact();
+  }
+
+  private boolean deliver(final OutboxEntry entry) {
+    final ResponseData<Void> response;
+    try {
+      response = new HubotService(entry.toSite()).sendMessage(entry.getMessage());
+    } catch (IOException | RuntimeException e) {
+      LOGGER.error("Hubot: outbox entry " + entry.getId() + " can't be sent, dropped", e);
+      complete(entry.getId());
+      return true;
+    }
+    if (!response.isSuccessful()) {
+      if (Common.isRetryable(response)) {
+        return false;
+      }
+      LOGGER.warn("Hubot: outbox entry " + entry.getId() + " rejected by " + entry.getUrl()
+          + " with code " + response.getCode() + ", dropped");
+    }
+    complete(entry.getId());
+    return true;
+  }
+
+  private synchronized Map.Entry<Long, Location> higher(final long id) {
+    return pending.higherEntry(id);
+  }
+
+  private void complete(final long id) {
+    try {
+      synchronized (this) {
+        if (pending.remove(id) != null) {
+          // Nothing to record when the whole journal is about to be deleted.
+          if (!pending.isEmpty()) {
+            append((DONE + id + "\n").getBytes(UTF_8), nextId);
+          }
+          compact();
+        }
+      }
+    } catch (IOException e) {
+      LOGGER.error("Hubot: unable to mark outbox entry " + id + " as done", e);
+    }
+  }
+
+  /**
+   * Makes room for a new entry, dropping the oldest segments when the outbox is full.
+   */
+  private boolean reserve(final int length) throws IOException {
+    while (totalBytes + length > maxBytes && segments.size() > 1) {
+      final Map.Entry<Long, Path> oldest = segments.pollFirstEntry();
+      final long end = segments.firstKey();
+      final int dropped = pending.headMap(end).size();
+      pending.headMap(end).clear();
+      totalBytes -= Files.size(oldest.getValue());
+      Files.delete(oldest.getValue());
+      LOGGER.warn("Hubot: outbox is full, " + dropped + " oldest message(s) dropped.");
+    }
+    return totalBytes + length <= maxBytes;
+  }
+
+  /**
+   * Appends a record, to a new segment when the active one is full.
+   *
+   * @param firstId id of the entry written, or the next id for other records, the key of a new
+   *     segment as no entry before it is written there.
+   */
+  private long append(final byte[] line, final long firstId) throws IOException {
+    if (active == null
+        || active.size() + line.length > SEGMENT_SIZE && firstId > segments.lastKey()) {
+      roll(firstId);
+    }
+    final long offset = active.size();
+    final ByteBuffer buffer = ByteBuffer.wrap(line);
+    while (buffer.hasRemaining()) {
+      active.write(buffer);
+    }
+    totalBytes += line.length;
+    return offset;
+  }
+
+  private void roll(final long firstId) throws IOException {
+    if (active != null) {
+      active.close();
+    }
+    Files.createDirectories(directory);
+    final Path segment = directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX,
+        firstId, SEGMENT_SUFFIX));
+    active = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.APPEND);
+    segments.put(firstId, segment);
+  }
+
+  /**
+   * Deletes the oldest segments without pending entries.
+   */
+  private void compact() throws IOException {
+    while (!segments.isEmpty()) {
+      final Map.Entry<Long, Path> oldest = segments.firstEntry();
+      final Long end = segments.higherKey(oldest.getKey());
+      if (end == null) {
+        if (!pending.isEmpty()) {
+          return;
+        }
+        active.close();
+        active = null;
+      } else if (!pending.isEmpty() && pending.firstKey() < end) {
+        return;
+      }
+      segments.pollFirstEntry();
+      totalBytes -= Files.size(oldest.getValue());
+      Files.delete(oldest.getValue());
+    }
+  }
+
+  private void load() throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return;
+    }
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+        SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      for (Path segment : stream) {
+        final String name = segment.getFileName().toString();
+        segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+            name.length() - SEGMENT_SUFFIX.length())), segment);
+      }
+    }
+    for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+      nextId = Math.max(nextId, segment.getKey());
+      totalBytes += load(segment.getValue());
+    }
+    if (!segments.isEmpty()) {
+      active = FileChannel.open(segments.lastEntry().getValue(), StandardOpenOption.WRITE,
+          StandardOpenOption.APPEND);
+    }
+    compact();
+    if (!pending.isEmpty()) {
+      LOGGER.info("Hubot: " + pending.size() + " message(s) pending in the outbox.");
+    }
+  }
+
+  /**
+   * Reads the records of one segment, a partially written last record is truncated.
+   *
+   * @return size of the segment.
+   */
+  private long load(final Path segment) throws IOException {
+    final byte[] content = Files.readAllBytes(segment);
+    int start = 0;
+    for (int i = 0; i < content.length; i++) {
+      if (content[i] != '\n') {
+        continue;
+      }
+      final String record = new String(content, start, Math.min(i - start, 64), UTF_8);
+      if (record.startsWith(ENTRY)) {
+        final long id = Json.MAPPER.readTree(content, start + ENTRY.length(),
+            i - start - ENTRY.length()).get("id").asLong();
+        pending.put(id, new Location(segment, start, i - start + 1));
+        nextId = Math.max(nextId, id + 1);
+      } else if (record.startsWith(DONE)) {
+        pending.remove(Long.parseLong(record.substring(DONE.length()).trim()));
+      }
+      start = i + 1;
+    }
+    if (start < content.length) {
+      LOGGER.warn("Hubot: truncating partially written outbox record in " + segment);
+      try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+        channel.truncate(start);
+      }
+    }
+    return start;
+  }
+
+  private OutboxEntry read(final Location location) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(location.length);
+    try (FileChannel channel = FileChannel.open(location.segment, StandardOpenOption.READ)) {
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, location.offset + buffer.position()) < 0) {
+          throw new IOException("Unexpected end of " + location.segment);
+        }
+      }
+    }
+    return Json.MAPPER.readValue(buffer.array(), ENTRY.length(),
+        location.length - ENTRY.length(), OutboxEntry.class);
+  }
+
+  /**
+   * Position of an entry record in a segment.
+   */
+  private static final class Location {
+
+    private final Path segment;
+    private final long offset;
+    private final int length;
+
+    Location(final Path segment, final long offset, final int length) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package org.thoughtslive.jenkins.plugins.hubot.outbox;
+
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically redelivers messages stored in the {@link Outbox}.
+ *
+ * @author Naresh Rayapati
+ */
+@Extension
+public class OutboxDrainer extends PeriodicWork {
+
+  @Override
+  public long getRecurrencePeriod() {
+    return TimeUnit.SECONDS.toMillis(30);
+  }
+
+  @Override
+  protected void doRun() {
+    final Outbox outbox = Outbox.get();
+    if (outbox != null && outbox.size() > 0) {
+      outbox.requestDrain();
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package org.thoughtslive.jenkins.plugins.hubot.outbox;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Date;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.thoughtslive.jenkins.plugins.hubot.api.Message;
+import org.thoughtslive.jenkins.plugins.hubot.config.Compression;
+import org.thoughtslive.jenkins.plugins.hubot.config.HubotSite;
+
+/**
+ * Message stored in the {@link Outbox}, with everything needed to send it again.
+ *
+ * @author Naresh Rayapati
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class OutboxEntry {
+
+  private long id;
+
+  private long createdAt;
+
+  private String site;
+
+  private String url;
+
+  private String room;
+
+  private Compression compression;
+
+  private int compressionThreshold;
+
+  private Message message;
+
+  static OutboxEntry of(final HubotSite site, final String room, final Message message) {
+    return OutboxEntry.builder().createdAt(System.currentTimeMillis()).site(site.getName())
+        .url(String.valueOf(site.getUrl())).room(room).compression(site.getCompression())
+        .compressionThreshold(site.getCompressionThreshold()).message(message).build();
+  }
+
+  @JsonIgnore
+  public Date getCreatedDate() {
+    return new Date(createdAt);
+  }
+
+  /**
+   * Returns a site sending to the stored url and room as is.
+   */
+  HubotSite toSite() throws MalformedURLException {
+    return HubotSite.builder().name(site).url(new URL(url)).room(room).compression(compression)
+        .compressionThreshold(compressionThreshold).build();
+  }
+}
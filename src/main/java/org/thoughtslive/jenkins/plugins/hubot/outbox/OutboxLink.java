@@ -0,0 +1,106 @@
+package org.thoughtslive.jenkins.plugins.hubot.outbox;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import hudson.security.Permission;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+/**
+ * Manage Jenkins page to inspect, replay or purge the {@link Outbox}.
+ *
+ * @author Naresh Rayapati
+ */
+@Extension
+public class OutboxLink extends ManagementLink {
+
+  private static final int MAX_ENTRIES = 100;
+
+  @Override
+  public String getIconFileName() {
+    return "symbol-reload";
+  }
+
+  @Override
+  public String getDisplayName() {
+    return "Hubot Outbox";
+  }
+
+  @Override
+  public String getDescription() {
+    return "Inspect, replay or purge hubot notifications which could not be delivered.";
+  }
+
+  @Override
+  public String getUrlName() {
+    return "hubot-outbox";
+  }
+
+  @Override
+  public Permission getRequiredPermission() {
+    return Jenkins.ADMINISTER;
+  }
+
+  @Override
+  public Category getCategory() {
+    return Category.STATUS;
+  }
+
+  public Outbox getOutbox() {
+    return Outbox.get();
+  }
+
+  /**
+   * Returns the oldest pending entries.
+   */
+  public List<OutboxEntry> getEntries() {
+    final Outbox outbox = Outbox.get();
+    return outbox == null ? Collections.emptyList() : outbox.getEntries(MAX_ENTRIES);
+  }
+
+  @RequirePOST
+  public HttpResponse doReplayAll() {
+    Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+    final Outbox outbox = Outbox.get();
+    if (outbox != null) {
+      outbox.requestDrain();
+    }
+    return HttpResponses.redirectToDot();
+  }
+
+  @RequirePOST
+  public HttpResponse doReplay(@QueryParameter final long id) throws IOException {
+    Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+    final Outbox outbox = Outbox.get();
+    if (outbox != null) {
+      outbox.replay(id);
+    }
+    return HttpResponses.redirectToDot();
+  }
+
+  @RequirePOST
+  public HttpResponse doPurge(@QueryParameter final long id) {
+    Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+    final Outbox outbox = Outbox.get();
+    if (outbox != null) {
+      outbox.purge(id);
+    }
+    return HttpResponses.redirectToDot();
+  }
+
+  @RequirePOST
+  public HttpResponse doPurgeAll() throws IOException {
+    Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+    final Outbox outbox = Outbox.get();
+    if (outbox != null) {
+      outbox.purgeAll();
+    }
+    return HttpResponses.redirectToDot();
+  }
+}
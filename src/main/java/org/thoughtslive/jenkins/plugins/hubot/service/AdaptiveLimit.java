@@ -0,0 +1,91 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+/**
+ * Additive increase, multiplicative decrease limit of the requests in flight to one hubot url.
+ * The limit grows by about one per limit's worth of fast responses while the url is busy, and is
+ * cut by {@link #BACKOFF_RATIO} on a retryable failure or a response much slower than the smoothed
+ * round trip time, so a struggling hubot gets fewer requests at once instead of more timeouts.
+ *
+ * @author Naresh Rayapati
+ */
+final class AdaptiveLimit {
+
+  static final double BACKOFF_RATIO = 0.9;
+
+  /**
+   * A response slower than this many times the smoothed round trip time counts as congestion.
+   */
+  static final double LATENCY_TOLERANCE = 2.0;
+
+  /**
+   * Weight of a new sample in the smoothed round trip time.
+   */
+  private static final double SMOOTHING = 0.1;
+
+  private static final int MIN_LIMIT = 1;
+
+  // Guarded by this.
+  private int maxLimit;
+
+  // Guarded by this.
+  private double limit;
+
+  // Guarded by this.
+  private double rttNanos;
+
+  AdaptiveLimit(final int maxLimit) {
+    configure(maxLimit);
+  }
+
+  /**
+   * Updates the upper bound, the limit starts there and is lowered to it when above.
+   *
+   * @param maxLimit upper bound, the limit is disabled when not positive.
+   */
+  synchronized void configure(final int maxLimit) {
+    if (maxLimit != this.maxLimit) {
+      limit = this.maxLimit <= 0 ? maxLimit : Math.min(limit, maxLimit);
+      this.maxLimit = maxLimit;
+    }
+  }
+
+  /**
+   * Adjusts the limit after a request.
+   *
+   * @param rttNanos time the request took.
+   * @param failed whether it failed with a retryable error, a timeout or an overloaded hubot.
+   * @param inFlight requests in flight when it was sent, itself included.
+   * @return the new limit, {@code 0} when disabled.
+   */
+  synchronized int onSample(final long rttNanos, final boolean failed, final int inFlight) {
+    if (maxLimit <= 0) {
+      return 0;
+    }
+    final boolean slow = this.rttNanos > 0 && rttNanos > this.rttNanos * LATENCY_TOLERANCE;
+    if (failed || slow) {
+      limit = Math.max(MIN_LIMIT, limit * BACKOFF_RATIO);
+    } else if (inFlight * 2 >= limit) {
+      // Only grow while the limit is actually used, an idle url says nothing about more load.
+      limit = Math.min(maxLimit, limit + 1 / limit);
+    }
+    if (!failed) {
+      this.rttNanos = this.rttNanos == 0 ? rttNanos
+          : this.rttNanos + (rttNanos - this.rttNanos) * SMOOTHING;
+    }
+    return getLimit();
+  }
+
+  /**
+   * Current limit, {@code 0} when disabled.
+   */
+  synchronized int getLimit() {
+    return maxLimit <= 0 ? 0 : Math.max(MIN_LIMIT, (int) limit);
+  }
+
+  /**
+   * Smoothed round trip time of successful requests, {@code 0} before the first one.
+   */
+  synchronized long getRttNanos() {
+    return (long) rttNanos;
+  }
+}
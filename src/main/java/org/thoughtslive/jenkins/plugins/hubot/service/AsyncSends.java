@@ -0,0 +1,199 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import static org.thoughtslive.jenkins.plugins.hubot.util.Common.buildErrorResponse;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import lombok.Getter;
+import org.thoughtslive.jenkins.plugins.hubot.api.Message;
+import org.thoughtslive.jenkins.plugins.hubot.api.ResponseData;
+
+/**
+ * Messages of one run sent in the background until they are flushed. They are prepared one after
+ * another per room and then queued on the {@link NotificationDispatcher}, in order with the build
+ * notifications to the same room.
+ *
+ * @author Naresh Rayapati
+ */
+public final class AsyncSends {
+
+  private static final ExecutorService EXECUTOR = Executors
+      .newThreadPerTaskExecutor(Thread.ofVirtual().name("Hubot async send ", 0).factory());
+
+  private final String job;
+
+  private final Map<String, CompletableFuture<?>> lanes = new HashMap<>();
+
+  private final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+
+  /**
+   * @param job full name of the job of the run, may be null.
+   */
+  public AsyncSends(final String job) {
+    this.job = job;
+  }
+
+  /**
+   * Queues a message, sent once the previous messages to the same room are sent. Failures are
+   * logged when they happen and reported by the next {@link #flush(long)}.
+   *
+   * @param service service to send the message with.
+   * @param message actual message to be sent.
+   * @param failOnError whether a failure of this message fails the flush.
+   * @param logger build log.
+   * @return completes with the response once the message is sent.
+   */
+  public CompletableFuture<ResponseData<Void>> send(final HubotService service,
+      final Message message, final boolean failOnError, final PrintStream logger) {
+    return send(service, () -> message, failOnError, logger);
+  }
+
+  /**
+   * Queues a message which is prepared in the background, after the previous messages to the same
+   * room are queued.
+   *
+   * @param message prepares the actual message, a failure is reported as the response.
+   * @see #send(HubotService, Message, boolean, PrintStream)
+   */
+  public synchronized CompletableFuture<ResponseData<Void>> send(final HubotService service,
+      final Callable<Message> message, final boolean failOnError, final PrintStream logger) {
+    final String room = service.getRoom();
+    final CompletableFuture<ResponseData<Void>> sent = enqueue(service, message);
+    final Pending entry = new Pending(room, failOnError, sent);
+    pending.add(entry);
+    sent.thenAccept(response -> {
+      if (response.isSuccessful()) {
+        pending.remove(entry);
+      } else {
+        logger.println("Hubot: Unable to send message to room: " + room + ", Error Code: "
+            + response.getCode() + ", Error Message: " + response.getError());
+      }
+    });
+    return sent;
+  }
+
+  /**
+   * Queues a message of a synchronous step, after the async messages to the same room. The step
+   * waits for it and reports its outcome, {@link #flush(long)} doesn't.
+   *
+   * @param service service to send the message with.
+   * @param message actual message to be sent.
+   * @return completes with the response once the message is sent.
+   */
+  public synchronized CompletableFuture<ResponseData<Void>> sendNow(final HubotService service,
+      final Message message) {
+    return enqueue(service, () -> message);
+  }
+
+  // Guarded by this.
+  private CompletableFuture<ResponseData<Void>> enqueue(final HubotService service,
+      final Callable<Message> message) {
+    final String key = service.getUrl() + "|" + service.getRoom();
+    final CompletableFuture<?> previous = lanes.get(key);
+    final CompletableFuture<ResponseData<Void>> sent = new CompletableFuture<>();
+    lanes.put(key, (previous == null
+        ? CompletableFuture.completedFuture(null) : previous.handle((response, error) -> null))
+        .thenRunAsync(() -> queue(job, service, message, sent), EXECUTOR));
+    return sent;
+  }
+
+  private static void queue(final String job, final HubotService service,
+      final Callable<Message> message, final CompletableFuture<ResponseData<Void>> sent) {
+    try {
+      NotificationDispatcher.get().send(job, service, message.call(), sent::complete);
+    } catch (Exception e) {
+      sent.complete(buildErrorResponse(e));
+    }
+  }
+
+  /**
+   * Waits for every message queued so far and reports those which failed or weren't sent within
+   * the timeout, each one is reported once.
+   *
+   * @param timeoutMillis deadline for all messages together.
+   * @return outcome of the messages.
+   * @throws InterruptedException when interrupted while waiting, messages are still sent.
+   */
+  public Flushed flush(final long timeoutMillis) throws InterruptedException {
+    final List<Pending> flushed = new ArrayList<>(pending);
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    final List<String> errors = new ArrayList<>();
+    boolean failOnError = false;
+    for (Pending entry : flushed) {
+      String error = null;
+      try {
+        final ResponseData<Void> response = entry.sent
+            .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        if (!response.isSuccessful()) {
+          error = "code " + response.getCode() + ", " + response.getError();
+        }
+      } catch (TimeoutException e) {
+        error = "not sent within " + TimeUnit.MILLISECONDS.toSeconds(timeoutMillis) + "s";
+      } catch (ExecutionException e) {
+        error = e.getCause().getMessage();
+      }
+      if (error != null) {
+        errors.add("room " + entry.room + ": " + error);
+        failOnError |= entry.failOnError;
+      }
+      pending.remove(entry);
+    }
+    final ResponseData<Void> response = errors.isEmpty()
+        ? ResponseData.<Void>builder().successful(true).code(200).build()
+        : ResponseData.<Void>builder().successful(false).code(-1).error("Hubot: " + errors.size()
+            + " async message(s) failed, " + String.join("; ", errors)).build();
+    return new Flushed(response, failOnError);
+  }
+
+  /**
+   * Number of messages queued and not sent yet, or failed and not flushed yet.
+   */
+  public int size() {
+    return pending.size();
+  }
+
+  /**
+   * Outcome of a flush.
+   */
+  @Getter
+  public static final class Flushed {
+
+    private final ResponseData<Void> response;
+
+    /**
+     * Whether one of the failed messages was sent with {@code failOnError}.
+     */
+    private final boolean failOnError;
+
+    Flushed(final ResponseData<Void> response, final boolean failOnError) {
+      this.response = response;
+      this.failOnError = failOnError;
+    }
+  }
+
+  private static final class Pending {
+
+    private final String room;
+    private final boolean failOnError;
+    private final CompletableFuture<ResponseData<Void>> sent;
+
+    Pending(final String room, final boolean failOnError,
+        final CompletableFuture<ResponseData<Void>> sent) {
+      this.room = room;
+      this.failOnError = failOnError;
+      this.sent = sent;
+    }
+  }
+}
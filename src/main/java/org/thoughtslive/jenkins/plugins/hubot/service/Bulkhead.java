@@ -0,0 +1,97 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the requests in flight to one hubot url, with a bounded queue of waiting senders. Once
+ * both are full further requests are rejected right away, so a hung hubot only holds back its own
+ * messages.
+ *
+ * @author Naresh Rayapati
+ */
+final class Bulkhead {
+
+  private final LongAdder rejected = new LongAdder();
+
+  private int maxConcurrent;
+
+  private int maxQueue;
+
+  private int inFlight;
+
+  private int waiting;
+
+  Bulkhead(final int maxConcurrent, final int maxQueue) {
+    configure(maxConcurrent, maxQueue);
+  }
+
+  /**
+   * Updates the limits, senders waiting for a slot are let through when it is raised.
+   *
+   * @param maxConcurrent requests in flight, unlimited when not positive.
+   * @param maxQueue senders waiting for a slot.
+   */
+  synchronized void configure(final int maxConcurrent, final int maxQueue) {
+    if (maxConcurrent != this.maxConcurrent || maxQueue != this.maxQueue) {
+      this.maxConcurrent = maxConcurrent;
+      this.maxQueue = Math.max(0, maxQueue);
+      notifyAll();
+    }
+  }
+
+  /**
+   * Updates the requests in flight only, as the {@link AdaptiveLimit} of the url moves.
+   *
+   * @param maxConcurrent requests in flight, unlimited when not positive.
+   */
+  synchronized void limit(final int maxConcurrent) {
+    configure(maxConcurrent, maxQueue);
+  }
+
+  /**
+   * Takes a slot, waiting when all are taken and the queue isn't full.
+   *
+   * @return false when rejected, {@link #exit()} must be called otherwise.
+   */
+  synchronized boolean enter() throws InterruptedException {
+    if (hasSlot() && waiting == 0) {
+      inFlight++;
+      return true;
+    }
+    if (waiting >= maxQueue) {
+      rejected.increment();
+      return false;
+    }
+    waiting++;
+    try {
+      while (!hasSlot()) {
+        wait();
+      }
+      inFlight++;
+      return true;
+    } finally {
+      waiting--;
+    }
+  }
+
+  synchronized void exit() {
+    inFlight--;
+    notifyAll();
+  }
+
+  private boolean hasSlot() {
+    return maxConcurrent <= 0 || inFlight < maxConcurrent;
+  }
+
+  synchronized int getInFlight() {
+    return inFlight;
+  }
+
+  synchronized int getWaiting() {
+    return waiting;
+  }
+
+  long getRejected() {
+    return rejected.sum();
+  }
+}
@@ -0,0 +1,94 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+
+/**
+ * Fails fast while a hubot url is known to be down. Opens after a number of consecutive
+ * failures, then lets a single trial request through once the open period elapses.
+ *
+ * @author Naresh Rayapati
+ */
+public final class CircuitBreaker {
+
+  private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+
+  /**
+   * State of the breaker.
+   */
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final String name;
+
+  private State state = State.CLOSED;
+
+  private int failures;
+
+  private long openedAt;
+
+  CircuitBreaker(final String name) {
+    this.name = name;
+  }
+
+  /**
+   * Whether a request may be sent now.
+   *
+   * @param threshold consecutive failures opening the breaker, disabled when not positive.
+   * @param openMillis how long the breaker stays open before a trial request.
+   */
+  synchronized boolean allowRequest(final int threshold, final long openMillis) {
+    if (threshold <= 0) {
+      return true;
+    }
+    switch (state) {
+      case OPEN:
+        if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openedAt) < openMillis) {
+          return false;
+        }
+        state = State.HALF_OPEN;
+        return true;
+      case HALF_OPEN:
+        // Trial request in flight.
+        return false;
+      case CLOSED:
+      default:
+        return true;
+    }
+  }
+
+  synchronized void onSuccess() {
+    if (state != State.CLOSED) {
+      LOGGER.info("Hubot: " + name + " is reachable again, circuit breaker closed.");
+    }
+    state = State.CLOSED;
+    failures = 0;
+  }
+
+  synchronized void onFailure(final int threshold) {
+    failures++;
+    if (threshold > 0 && (state == State.HALF_OPEN || failures >= threshold)) {
+      if (state != State.OPEN) {
+        LOGGER.warn("Hubot: " + name + " failed " + failures
+            + " time(s) in a row, circuit breaker opened.");
+      }
+      state = State.OPEN;
+      openedAt = System.nanoTime();
+    }
+  }
+
+  /**
+   * A request let through was cancelled before it completed, the next one is a trial again.
+   */
+  synchronized void onCancel() {
+    if (state == State.HALF_OPEN) {
+      // Open since longer than the open period.
+      state = State.OPEN;
+    }
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+}
@@ -0,0 +1,60 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import java.io.IOException;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+/**
+ * Gzips request bodies of calls tagged with a {@link Threshold}, bodies smaller than the threshold
+ * are sent as is.
+ *
+ * @author Naresh Rayapati
+ */
+public final class GzipRequestInterceptor implements Interceptor {
+
+  @Override
+  public Response intercept(final Chain chain) throws IOException {
+    final Request request = chain.request();
+    final Threshold threshold = request.tag(Threshold.class);
+    RequestBody body = request.body();
+    if (threshold == null || body == null || request.header("Content-Encoding") != null) {
+      return chain.proceed(request);
+    }
+
+    if (body.contentLength() < 0) {
+      // Size is unknown until it is written.
+      final Buffer buffer = new Buffer();
+      body.writeTo(buffer);
+      body = RequestBody.create(body.contentType(), buffer.readByteString());
+    }
+    if (body.contentLength() < threshold.bytes) {
+      return chain.proceed(request.newBuilder().method(request.method(), body).build());
+    }
+
+    final Buffer gzipped = new Buffer();
+    try (BufferedSink sink = Okio.buffer(new GzipSink(gzipped))) {
+      body.writeTo(sink);
+    }
+    return chain.proceed(request.newBuilder().header("Content-Encoding", "gzip")
+        .method(request.method(), RequestBody.create(body.contentType(), gzipped.readByteString()))
+        .build());
+  }
+
+  /**
+   * Minimum body size in bytes to compress, attached to a call with {@code @Tag}.
+   */
+  public static final class Threshold {
+
+    private final long bytes;
+
+    public Threshold(final long bytes) {
+      this.bytes = Math.max(0, bytes);
+    }
+  }
+}
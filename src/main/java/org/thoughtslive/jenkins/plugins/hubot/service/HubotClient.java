@@ -0,0 +1,135 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+
+/**
+ * Endpoints and runtime state shared by every send to one hubot url.
+ *
+ * @author Naresh Rayapati
+ */
+public final class HubotClient {
+
+  /**
+   * How long a hubot without the batch endpoint, or unreachable when asked, isn't asked again.
+   */
+  static final long BATCH_PROBE_TTL_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+  @Getter
+  private final HubotEndPoints endPoints;
+
+  @Getter
+  private final CircuitBreaker circuitBreaker;
+
+  private final TokenBucket siteBucket = new TokenBucket(0, 1, System.nanoTime());
+
+  private final ConcurrentMap<String, TokenBucket> roomBuckets = new ConcurrentHashMap<>();
+
+  private final Bulkhead bulkhead = new Bulkhead(0, 0);
+
+  private final AdaptiveLimit adaptiveLimit = new AdaptiveLimit(0);
+
+  private final ConcurrentMap<String, AtomicLong> sequences = new ConcurrentHashMap<>();
+
+  // Guarded by this.
+  private Boolean batchSupported;
+
+  // Guarded by this.
+  private long batchProbedAt;
+
+  HubotClient(final String url, final HubotEndPoints endPoints) {
+    this.endPoints = endPoints;
+    this.circuitBreaker = new CircuitBreaker(url);
+  }
+
+  /**
+   * Returns the rate limiter of the url, with the given limit.
+   */
+  TokenBucket getSiteBucket(final int perMinute, final int burst) {
+    siteBucket.configure(perMinute, burst, System.nanoTime());
+    return siteBucket;
+  }
+
+  /**
+   * Returns the rate limiter of one room, with the given limit.
+   */
+  TokenBucket getRoomBucket(final String room, final int perMinute, final int burst) {
+    final long now = System.nanoTime();
+    final TokenBucket bucket = roomBuckets
+        .computeIfAbsent(room, key -> new TokenBucket(perMinute, burst, now));
+    bucket.configure(perMinute, burst, now);
+    return bucket;
+  }
+
+  /**
+   * Returns the bulkhead of the url, with the given limits. The requests in flight follow the
+   * adaptive limit of the url, {@code maxConcurrent} is its upper bound.
+   */
+  Bulkhead getBulkhead(final int maxConcurrent, final int maxQueue) {
+    adaptiveLimit.configure(maxConcurrent);
+    bulkhead.configure(adaptiveLimit.getLimit(), maxQueue);
+    return bulkhead;
+  }
+
+  /**
+   * Adjusts the adaptive limit of the url after a request and applies it to the bulkhead.
+   *
+   * @param rttNanos time the request took.
+   * @param failed whether it failed with a retryable error.
+   * @param inFlight requests in flight when it was sent, itself included.
+   */
+  void onSample(final long rttNanos, final boolean failed, final int inFlight) {
+    final int limit = adaptiveLimit.onSample(rttNanos, failed, inFlight);
+    if (limit > 0) {
+      bulkhead.limit(limit);
+    }
+  }
+
+  /**
+   * Current limit of requests in flight to the url, {@code 0} when unlimited.
+   */
+  public int getConcurrencyLimit() {
+    return adaptiveLimit.getLimit();
+  }
+
+  /**
+   * Smoothed round trip time of successful requests to the url, {@code 0} before the first one.
+   */
+  public long getRttNanos() {
+    return adaptiveLimit.getRttNanos();
+  }
+
+  /**
+   * Number of requests rejected because the url had too many in flight and waiting.
+   */
+  public long getRejected() {
+    return bulkhead.getRejected();
+  }
+
+  /**
+   * Returns the next sequence number of messages queued for one room, starting at 1.
+   */
+  long nextSequence(final String room) {
+    return sequences.computeIfAbsent(room, key -> new AtomicLong()).incrementAndGet();
+  }
+
+  /**
+   * Whether the hubot script advertises the batch endpoint, null when it has to be asked. A
+   * positive answer is kept, a negative or failed one for {@link #BATCH_PROBE_TTL_NANOS}.
+   */
+  synchronized Boolean getBatchSupported(final long now) {
+    if (batchSupported == null || batchSupported
+        || now - batchProbedAt < BATCH_PROBE_TTL_NANOS) {
+      return batchSupported;
+    }
+    return null;
+  }
+
+  synchronized void setBatchSupported(final boolean supported, final long now) {
+    batchSupported = supported;
+    batchProbedAt = now;
+  }
+}
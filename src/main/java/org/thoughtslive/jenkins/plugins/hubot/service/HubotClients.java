@@ -0,0 +1,99 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import static org.thoughtslive.jenkins.plugins.hubot.util.Common.sanitizeURL;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.apache.log4j.Logger;
+import org.thoughtslive.jenkins.plugins.hubot.config.HubotSite;
+import org.thoughtslive.jenkins.plugins.hubot.util.Json;
+import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava.RxJavaCallAdapterFactory;
+import retrofit2.converter.jackson.JacksonConverterFactory;
+
+/**
+ * Process wide registry of {@link HubotClient}s keyed by site url.
+ *
+ * <p>All clients share one {@link OkHttpClient}, so connections (HTTP/2 where the server
+ * supports it) are pooled and kept alive across messages instead of being opened per send.
+ *
+ * @author Naresh Rayapati
+ */
+public final class HubotClients {
+
+  private static final Logger LOGGER = Logger.getLogger(HubotClients.class.getName());
+
+  private static final int MAX_IDLE_CONNECTIONS = 10;
+
+  private static final long KEEP_ALIVE_MINUTES = 5;
+
+  private static final OkHttpClient HTTP_CLIENT = new OkHttpClient.Builder()
+      .connectionPool(
+          new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+      .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+      .addInterceptor(new GzipRequestInterceptor())
+      .build();
+
+  private static final Map<String, HubotClient> CLIENTS = new ConcurrentHashMap<>();
+
+  private HubotClients() {
+  }
+
+  /**
+   * Returns the shared client for the given hubot url, creating it on first use.
+   *
+   * @param url hubot url.
+   * @return client bound to the shared http client.
+   */
+  public static HubotClient get(final URL url) {
+    return CLIENTS.computeIfAbsent(sanitizeURL(url.toString()), HubotClients::create);
+  }
+
+  /**
+   * Drops the clients of the given sites whose url is no longer configured. Clients of urls still
+   * in use keep their runtime state, sequence numbers, limits and requests in flight, and pick up
+   * the new settings on the next send.
+   *
+   * @param configured sanitized urls of every site still configured.
+   * @param sites sites those were replaced or removed.
+   */
+  public static void evict(final Set<String> configured, final HubotSite... sites) {
+    if (sites == null) {
+      return;
+    }
+    for (HubotSite site : sites) {
+      if (site != null && site.getUrl() != null) {
+        final String url = sanitizeURL(site.getUrl().toString());
+        if (!configured.contains(url) && CLIENTS.remove(url) != null) {
+          LOGGER.debug("Hubot: evicted client for " + site.getUrl());
+        }
+      }
+    }
+  }
+
+  /**
+   * Drops every cached client.
+   */
+  public static void evictAll() {
+    CLIENTS.clear();
+  }
+
+  static int size() {
+    return CLIENTS.size();
+  }
+
+  private static HubotClient create(final String baseUrl) {
+    return new HubotClient(baseUrl, new Retrofit.Builder().baseUrl(baseUrl)
+        .addConverterFactory(new MessageConverterFactory())
+        .addConverterFactory(JacksonConverterFactory.create(Json.MAPPER))
+        .addCallAdapterFactory(RxJavaCallAdapterFactory.create()).client(HTTP_CLIENT).build()
+        .create(HubotEndPoints.class));
+  }
+}
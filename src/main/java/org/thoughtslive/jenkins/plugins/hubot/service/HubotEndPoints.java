@@ -1,10 +1,13 @@
 package org.thoughtslive.jenkins.plugins.hubot.service;
 
+import java.util.List;
 import org.thoughtslive.jenkins.plugins.hubot.api.Message;
 import retrofit2.Call;
 import retrofit2.http.Body;
+import retrofit2.http.GET;
 import retrofit2.http.POST;
 import retrofit2.http.Path;
+import retrofit2.http.Tag;
 
 /**
  * Actual hubot endpoint.
@@ -14,6 +17,14 @@ import retrofit2.http.Path;
 public interface HubotEndPoints {
 
   @POST("hubot/notify/{room}")
-  Call<Void> sendMessage(@Path("room") String room, @Body Message message);
+  Call<Void> sendMessage(@Path("room") String room, @Body Message message,
+      @Tag GzipRequestInterceptor.Threshold compression);
+
+  @POST("hubot/notify-batch/{room}")
+  Call<Void> sendMessages(@Path("room") String room, @Body List<Message> messages,
+      @Tag GzipRequestInterceptor.Threshold compression);
+
+  @GET("hubot/notify-batch")
+  Call<Void> batchSupported();
 
 }
@@ -1,18 +1,30 @@
 package org.thoughtslive.jenkins.plugins.hubot.service;
 
 import static org.thoughtslive.jenkins.plugins.hubot.util.Common.buildErrorResponse;
+import static org.thoughtslive.jenkins.plugins.hubot.util.Common.isRetryable;
 import static org.thoughtslive.jenkins.plugins.hubot.util.Common.parseResponse;
-import static org.thoughtslive.jenkins.plugins.hubot.util.Common.sanitizeURL;
 
 import hudson.Util;
-import okhttp3.OkHttpClient;
+import java.net.URL;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import okhttp3.RequestBody;
 import org.apache.log4j.Logger;
 import org.thoughtslive.jenkins.plugins.hubot.api.Message;
 import org.thoughtslive.jenkins.plugins.hubot.api.ResponseData;
+import org.thoughtslive.jenkins.plugins.hubot.config.Compression;
+import org.thoughtslive.jenkins.plugins.hubot.config.GlobalConfig;
 import org.thoughtslive.jenkins.plugins.hubot.config.HubotSite;
-import retrofit2.Retrofit;
-import retrofit2.adapter.rxjava.RxJavaCallAdapterFactory;
-import retrofit2.converter.jackson.JacksonConverterFactory;
+import org.thoughtslive.jenkins.plugins.hubot.config.RateLimitPolicy;
+import org.thoughtslive.jenkins.plugins.hubot.metrics.HubotMetrics;
+import org.thoughtslive.jenkins.plugins.hubot.metrics.RoomMetrics;
+import retrofit2.Call;
+import retrofit2.Response;
 
 /**
  * Hubot service which actually sends a message.
@@ -23,18 +35,47 @@ public class HubotService {
 
   private static final Logger LOGGER = Logger.getLogger(HubotService.class.getName());
 
+  private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+  private static final long MAX_RETRY_AFTER_MILLIS = 600_000;
+
+  private final HubotClient hubotClient;
   private final HubotEndPoints hubotEndPoints;
   private final HubotSite hubotSite;
+  private final GzipRequestInterceptor.Threshold compression;
+  private final int breakerThreshold;
+  private final long breakerOpenMillis;
+  private final int bulkheadMaxConcurrent;
+  private final int bulkheadMaxQueue;
+  private final InFlightCalls calls;
 
   public HubotService(final HubotSite hubotSite) {
+    this(hubotSite, null);
+  }
 
-    final OkHttpClient httpClient = new OkHttpClient();
+  /**
+   * Creates a service whose calls are cancelled when the given scope is.
+   *
+   * @param hubotSite site to send to.
+   * @param calls scope of the caller, null when calls are never cancelled.
+   */
+  public HubotService(final HubotSite hubotSite, final InFlightCalls calls) {
     this.hubotSite = hubotSite;
-
-    this.hubotEndPoints = new Retrofit.Builder().baseUrl(sanitizeURL(hubotSite.getUrl().toString()))
-        .addConverterFactory(JacksonConverterFactory.create())
-        .addCallAdapterFactory(RxJavaCallAdapterFactory.create()).client(httpClient).build()
-        .create(HubotEndPoints.class);
+    this.calls = calls;
+    this.hubotClient = HubotClients.get(hubotSite.getUrl());
+    this.hubotEndPoints = hubotClient.getEndPoints();
+    this.compression = hubotSite.getCompression() == Compression.GZIP
+        ? new GzipRequestInterceptor.Threshold(hubotSite.getCompressionThreshold()) : null;
+    final GlobalConfig config = GlobalConfig.get();
+    this.breakerThreshold = config == null ? GlobalConfig.DEFAULT_CIRCUIT_BREAKER_THRESHOLD
+        : config.getCircuitBreakerThreshold();
+    this.breakerOpenMillis = TimeUnit.SECONDS.toMillis(
+        config == null ? GlobalConfig.DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS
+            : config.getCircuitBreakerOpenSeconds());
+    this.bulkheadMaxConcurrent = config == null ? GlobalConfig.DEFAULT_BULKHEAD_MAX_CONCURRENT
+        : config.getBulkheadMaxConcurrent();
+    this.bulkheadMaxQueue = config == null ? GlobalConfig.DEFAULT_BULKHEAD_MAX_QUEUE
+        : config.getBulkheadMaxQueue();
   }
 
   /**
@@ -44,18 +85,489 @@ public class HubotService {
    * @return Nothing except the response with error code if any.
    */
   public ResponseData<Void> sendMessage(final Message message) {
+    return sendMessage(message, true);
+  }
+
+  ResponseData<Void> sendMessage(final Message message, final boolean limited) {
+    return deliver(new Delivery(Collections.singletonList(message), false, limited));
+  }
+
+  /**
+   * Sends messages to given room in one request, the hubot script must support batches.
+   *
+   * @param messages actual messages to be sent, in order.
+   * @return Nothing except the response with error code if any.
+   */
+  public ResponseData<Void> sendMessages(final List<Message> messages) {
+    return sendMessages(messages, true);
+  }
+
+  ResponseData<Void> sendMessages(final List<Message> messages, final boolean limited) {
+    return deliver(new Delivery(messages, true, limited));
+  }
+
+  public RateLimitPolicy getRateLimitPolicy() {
+    return hubotSite.getRateLimitPolicy() == null ? RateLimitPolicy.WAIT
+        : hubotSite.getRateLimitPolicy();
+  }
+
+  /**
+   * Reserves the rate limit for messages held back by the caller, with the {@code QUEUE} policy.
+   *
+   * @param permits number of messages.
+   * @return nano seconds the caller must wait before sending them, -1 for other policies.
+   */
+  long reserve(final int permits) {
+    if (getRateLimitPolicy() != RateLimitPolicy.QUEUE) {
+      return -1;
+    }
+    final long now = System.nanoTime();
+    final long wait = Math.max(siteBucket().reserve(permits, now),
+        roomBucket(getRoom()).reserve(permits, now));
+    if (wait > 0) {
+      getMetrics().throttled(permits);
+    }
+    return wait;
+  }
+
+  /**
+   * Returns the next sequence number of the actual room, the {@code seq} of the message.
+   */
+  long nextSequence() {
+    return hubotClient.nextSequence(getRoom());
+  }
+
+  /**
+   * Returns the send metrics of the actual room.
+   */
+  public RoomMetrics getMetrics() {
+    return HubotMetrics.get(hubotSite, getRoom());
+  }
+
+  /**
+   * Sends the messages on the caller's thread, waiting for the rate limit and the backoff between
+   * attempts.
+   */
+  private ResponseData<Void> deliver(final Delivery delivery) {
+    ResponseData<Void> response;
+    while ((response = attempt(delivery)) == null) {
+      if (!pause(delivery.takeDelayNanos())) {
+        if (isCancelled()) {
+          return cancelled(getRoom());
+        }
+        return delivery.response != null ? delivery.response : ResponseData.<Void>builder()
+            .successful(false).code(-1)
+            .error("Hubot: interrupted while waiting for the rate limit of room " + getRoom())
+            .build();
+      }
+    }
+    return response;
+  }
+
+  /**
+   * Makes the next attempt to send the messages, retrying retryable failures with exponential
+   * backoff and jitter, unless the circuit breaker of the url is open. Never waits for the rate
+   * limit or the backoff, the caller does before calling it again.
+   *
+   * @return the outcome, null when the caller must wait {@link Delivery#takeDelayNanos()} first.
+   */
+  ResponseData<Void> attempt(final Delivery delivery) {
+    final String room = getRoom();
+    final int permits = delivery.messages.size();
+    final RoomMetrics metrics = HubotMetrics.get(hubotSite, room);
+    final CircuitBreaker breaker = hubotClient.getCircuitBreaker();
+    final Bulkhead bulkhead = hubotClient.getBulkhead(bulkheadMaxConcurrent, bulkheadMaxQueue);
+    if (delivery.call == null) {
+      delivery.call = delivery.batch
+          ? hubotEndPoints.sendMessages(room, delivery.messages, compression)
+          : hubotEndPoints.sendMessage(room, delivery.messages.get(0), compression);
+    }
+    while (true) {
+      if (isCancelled()) {
+        return cancelled(room);
+      }
+      if ((delivery.limited || delivery.attempt > 0) && !delivery.acquired) {
+        final long wait = acquire(room, permits, metrics);
+        if (wait < 0) {
+          return ResponseData.<Void>builder().successful(false).code(429)
+              .error("Hubot: rate limit of room " + room + " reached, message dropped.").build();
+        }
+        if (wait > 0) {
+          // Reserved already, sent without acquiring again once the caller waited.
+          delivery.acquired = true;
+          return delivery.defer(wait);
+        }
+      }
+      delivery.acquired = false;
+      final ResponseData<Void> shed = enter(bulkhead, room, metrics);
+      if (shed != null) {
+        return shed;
+      }
+      final int inFlight = bulkhead.getInFlight();
+      final Call<Void> attemptCall = delivery.attempt == 0 ? delivery.call : delivery.call.clone();
+      final long start;
+      final ResponseData<Void> response;
+      try {
+        if (!breaker.allowRequest(breakerThreshold, breakerOpenMillis)) {
+          metrics.rejected();
+          return delivery.response != null ? delivery.response : ResponseData.<Void>builder()
+              .successful(false).code(-1).error("Hubot: circuit breaker is open, " + getUrl()
+                  + " failed recently, message not sent.").build();
+        }
+        if (calls != null && !calls.track(attemptCall)) {
+          breaker.onCancel();
+          return cancelled(room);
+        }
+        start = System.nanoTime();
+        try {
+          response = send(room, metrics, attemptCall);
+        } finally {
+          if (calls != null) {
+            calls.untrack(attemptCall);
+          }
+        }
+      } finally {
+        bulkhead.exit();
+      }
+      if (attemptCall.isCanceled()) {
+        // Aborted by the caller, says nothing about hubot.
+        breaker.onCancel();
+        return cancelled(room);
+      }
+      delivery.response = response;
+      sampled(System.nanoTime() - start, isRetryable(response), inFlight);
+      if (!isRetryable(response)) {
+        breaker.onSuccess();
+        return response;
+      }
+      failed(breaker, response);
+      if (delivery.attempt >= hubotSite.getRetries()) {
+        return response;
+      }
+      final long backoff = backoffNanos(delivery.attempt++);
+      LOGGER.info("Hubot: retrying message to room " + room + " after code "
+          + response.getCode() + ", attempt " + (delivery.attempt + 1));
+      if (backoff > 0) {
+        return delivery.defer(backoff);
+      }
+    }
+  }
+
+  /**
+   * Counts a retryable response against the circuit breaker, except rate limiting: hubot answered,
+   * it only asks to slow down, which the rate limits and the adaptive limit take care of.
+   */
+  private void failed(final CircuitBreaker breaker, final ResponseData<Void> response) {
+    if (response.getCode() == 429) {
+      breaker.onCancel();
+    } else {
+      breaker.onFailure(breakerThreshold);
+    }
+  }
+
+  /**
+   * Feeds a request to the adaptive concurrency limit of the url.
+   */
+  private void sampled(final long nanos, final boolean failed, final int inFlight) {
+    hubotClient.onSample(nanos, failed, inFlight);
+    limited();
+  }
+
+  /**
+   * Publishes the adaptive limit and the bulkhead rejections of the url.
+   */
+  private void limited() {
+    HubotMetrics.site(hubotSite).limited(hubotClient.getConcurrencyLimit(),
+        hubotClient.getRttNanos(), hubotClient.getRejected());
+  }
+
+  /**
+   * Enters the bulkhead of the url, waiting in its queue when every slot is taken.
+   *
+   * @return null when entered, otherwise the response to return.
+   */
+  private ResponseData<Void> enter(final Bulkhead bulkhead, final String room,
+      final RoomMetrics metrics) {
     try {
-      String room;
-      if (this.hubotSite.isUseFolderName()
-          && Util.fixEmpty(this.hubotSite.getRoomPrefix()) != null) {
-        room = this.hubotSite.getRoomPrefix().trim() + this.hubotSite.getRoom().trim();
-      } else {
-        room = this.hubotSite.getRoom().trim();
+      if (bulkhead.enter()) {
+        return null;
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return ResponseData.<Void>builder().successful(false).code(-1)
+          .error("Hubot: interrupted while waiting to send to room " + room).build();
+    }
+    metrics.shed();
+    limited();
+    return ResponseData.<Void>builder().successful(false).code(-1)
+        .error("Hubot: too many messages in flight to " + getUrl() + ", message to room " + room
+            + " not sent.").build();
+  }
+
+  private boolean isCancelled() {
+    return calls != null && calls.isCancelled();
+  }
+
+  private static ResponseData<Void> cancelled(final String room) {
+    return ResponseData.<Void>builder().successful(false).code(-1)
+        .error("Hubot: message to room " + room + " cancelled.").build();
+  }
 
-      return parseResponse(hubotEndPoints.sendMessage(room, message).execute());
+  /**
+   * Reserves, or with the {@code DROP} policy checks, the site and room rate limits.
+   *
+   * @return nano seconds to wait before sending, -1 when the message is dropped.
+   */
+  private long acquire(final String room, final int permits, final RoomMetrics metrics) {
+    final TokenBucket site = siteBucket();
+    final TokenBucket roomBucket = roomBucket(room);
+    final long now = System.nanoTime();
+    if (getRateLimitPolicy() == RateLimitPolicy.DROP) {
+      if (site.tryAcquire(permits, now)) {
+        if (roomBucket.tryAcquire(permits, now)) {
+          return 0;
+        }
+        site.release(permits);
+      }
+      metrics.dropped(permits);
+      return -1;
+    }
+    final long wait = Math.max(site.reserve(permits, now), roomBucket.reserve(permits, now));
+    if (wait > 0) {
+      metrics.throttled(permits);
+    }
+    return wait;
+  }
+
+  /**
+   * Waits before sending, woken up early when the calls of the caller are cancelled.
+   *
+   * @return false when cancelled or interrupted.
+   */
+  private boolean pause(final long nanos) {
+    try {
+      if (calls != null) {
+        return calls.sleep(nanos);
+      }
+      TimeUnit.NANOSECONDS.sleep(nanos);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private TokenBucket siteBucket() {
+    return hubotClient.getSiteBucket(hubotSite.getSiteRateLimit(),
+        hubotSite.getRateLimitBurst());
+  }
+
+  private TokenBucket roomBucket(final String room) {
+    return hubotClient.getRoomBucket(room, hubotSite.getRoomRateLimit(),
+        hubotSite.getRateLimitBurst());
+  }
+
+  private ResponseData<Void> send(final String room, final RoomMetrics metrics,
+      final Call<Void> call) {
+    final long start = System.nanoTime();
+    try {
+      final Response<Void> raw = call.execute();
+      if (raw.code() == 429) {
+        final long pause = retryAfterNanos(raw.headers().get("Retry-After"));
+        if (pause > 0) {
+          roomBucket(room).pause(pause, System.nanoTime());
+        }
+      }
+      final ResponseData<Void> response = parseResponse(raw);
+      metrics.record(response.isSuccessful(), response.getCode(), null,
+          System.nanoTime() - start, bytesWritten(call));
+      return response;
     } catch (Exception e) {
+      metrics.record(false, -1, e, System.nanoTime() - start, bytesWritten(call));
       return buildErrorResponse(e);
     }
   }
+
+  /**
+   * Parses a {@code Retry-After} header, either seconds or an HTTP date.
+   *
+   * @return nano seconds, 0 when missing or invalid.
+   */
+  static long retryAfterNanos(final String retryAfter) {
+    final String value = Util.fixEmptyAndTrim(retryAfter);
+    if (value == null) {
+      return 0;
+    }
+    long millis;
+    try {
+      millis = TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+    } catch (NumberFormatException e) {
+      try {
+        millis = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant()
+            .toEpochMilli() - System.currentTimeMillis();
+      } catch (DateTimeParseException ex) {
+        return 0;
+      }
+    }
+    return TimeUnit.MILLISECONDS.toNanos(Math.max(0, Math.min(millis, MAX_RETRY_AFTER_MILLIS)));
+  }
+
+  /**
+   * Delay before the next attempt, half of the exponential delay plus a random jitter.
+   *
+   * @param attempt number of the failed attempt, from 0.
+   * @return nano seconds, 0 without backoff.
+   */
+  private long backoffNanos(final int attempt) {
+    final long delay = Math.min(MAX_BACKOFF_MILLIS,
+        (long) hubotSite.getRetryBackoffMillis() << Math.min(attempt, 20));
+    if (delay <= 0) {
+      return 0;
+    }
+    return TimeUnit.MILLISECONDS.toNanos(
+        delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+  }
+
+  private static long bytesWritten(final Call<Void> call) {
+    try {
+      final RequestBody body = call.request().body();
+      return body instanceof MessageConverterFactory.StreamingBody
+          ? ((MessageConverterFactory.StreamingBody) body).getBytesWritten() : -1;
+    } catch (RuntimeException e) {
+      // The request could not be created, nothing was written.
+      return -1;
+    }
+  }
+
+  /**
+   * Whether the hubot script accepts {@link #sendMessages(List)}, asked through the circuit
+   * breaker and the bulkhead of the url. The answer is cached per url.
+   */
+  public boolean isBatchSupported() {
+    final Boolean cached = hubotClient.getBatchSupported(System.nanoTime());
+    if (cached != null) {
+      return cached;
+    }
+    final boolean supported = probeBatchSupported();
+    hubotClient.setBatchSupported(supported, System.nanoTime());
+    return supported;
+  }
+
+  private boolean probeBatchSupported() {
+    final CircuitBreaker breaker = hubotClient.getCircuitBreaker();
+    final Bulkhead bulkhead = hubotClient.getBulkhead(bulkheadMaxConcurrent, bulkheadMaxQueue);
+    try {
+      if (!bulkhead.enter()) {
+        return false;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    try {
+      if (!breaker.allowRequest(breakerThreshold, breakerOpenMillis)) {
+        return false;
+      }
+      final ResponseData<Void> response;
+      try {
+        response = parseResponse(hubotEndPoints.batchSupported().execute());
+      } catch (Exception e) {
+        breaker.onFailure(breakerThreshold);
+        return false;
+      }
+      if (isRetryable(response)) {
+        failed(breaker, response);
+      } else {
+        breaker.onSuccess();
+      }
+      return response.isSuccessful();
+    } finally {
+      bulkhead.exit();
+    }
+  }
+
+  /**
+   * Returns the actual room, including the prefix when the folder name is used as room.
+   */
+  public String getRoom() {
+    if (this.hubotSite.isUseFolderName()
+        && Util.fixEmpty(this.hubotSite.getRoomPrefix()) != null) {
+      return this.hubotSite.getRoomPrefix().trim() + this.hubotSite.getRoom().trim();
+    }
+    return this.hubotSite.getRoom().trim();
+  }
+
+  /**
+   * Scope of the calls, null when they are never cancelled.
+   */
+  InFlightCalls getCalls() {
+    return calls;
+  }
+
+  /**
+   * Requests allowed in flight to the url at once, {@code 0} when unlimited.
+   */
+  int getConcurrencyLimit() {
+    hubotClient.getBulkhead(bulkheadMaxConcurrent, bulkheadMaxQueue);
+    return hubotClient.getConcurrencyLimit();
+  }
+
+  public HubotSite getSite() {
+    return this.hubotSite;
+  }
+
+  public URL getUrl() {
+    return this.hubotSite.getUrl();
+  }
+
+  /**
+   * Messages sent in one request, kept between attempts so that the caller decides how to wait for
+   * the rate limit and the backoff, see {@link #attempt(Delivery)}.
+   */
+  static final class Delivery {
+
+    private final List<Message> messages;
+    private final boolean batch;
+    private final boolean limited;
+    private Call<Void> call;
+    private int attempt;
+    private boolean acquired;
+    private ResponseData<Void> response;
+    private long delayNanos;
+
+    /**
+     * @param messages messages to send, in order.
+     * @param batch whether to send them as a batch, otherwise the only message is sent alone.
+     * @param limited whether to acquire the rate limit, false when it was reserved before.
+     */
+    Delivery(final List<Message> messages, final boolean batch, final boolean limited) {
+      this.messages = messages;
+      this.batch = batch;
+      this.limited = limited;
+    }
+
+    List<Message> getMessages() {
+      return messages;
+    }
+
+    /**
+     * Time to wait before the next attempt, {@code 0} when the last attempt didn't ask to wait.
+     * Cleared once read.
+     */
+    long takeDelayNanos() {
+      final long delay = delayNanos;
+      delayNanos = 0;
+      return delay;
+    }
+
+    /**
+     * Asks the caller to wait before the next attempt.
+     *
+     * @return null, what {@link HubotService#attempt(Delivery)} returns then.
+     */
+    ResponseData<Void> defer(final long nanos) {
+      this.delayNanos = nanos;
+      return null;
+    }
+  }
 }
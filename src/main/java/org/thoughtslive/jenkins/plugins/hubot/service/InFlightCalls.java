@@ -0,0 +1,126 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import retrofit2.Call;
+
+/**
+ * Calls to hubot in flight for a run or a step execution, cancelled together when it is aborted.
+ * Calls of a child, like a step of a run, are cancelled with the parent too.
+ *
+ * @author Naresh Rayapati
+ */
+public final class InFlightCalls {
+
+  private final InFlightCalls parent;
+
+  private final Set<Call<?>> calls = ConcurrentHashMap.newKeySet();
+
+  private final Set<Runnable> listeners = ConcurrentHashMap.newKeySet();
+
+  private volatile boolean cancelled;
+
+  public InFlightCalls() {
+    this(null);
+  }
+
+  private InFlightCalls(final InFlightCalls parent) {
+    this.parent = parent;
+  }
+
+  /**
+   * Returns a new scope, cancelled when this one is.
+   */
+  public InFlightCalls child() {
+    return new InFlightCalls(this);
+  }
+
+  /**
+   * Cancels the calls in flight and every call started later.
+   */
+  public void cancel() {
+    cancelled = true;
+    for (Call<?> call : calls) {
+      call.cancel();
+    }
+    for (Runnable listener : listeners) {
+      listener.run();
+    }
+  }
+
+  public boolean isCancelled() {
+    return cancelled || (parent != null && parent.isCancelled());
+  }
+
+  /**
+   * Tracks a call before it is executed.
+   *
+   * @return false when already cancelled, the call must not be executed then.
+   */
+  boolean track(final Call<?> call) {
+    for (InFlightCalls scope = this; scope != null; scope = scope.parent) {
+      scope.calls.add(call);
+    }
+    if (isCancelled()) {
+      // Cancelled meanwhile, maybe without seeing this call.
+      untrack(call);
+      return false;
+    }
+    return true;
+  }
+
+  void untrack(final Call<?> call) {
+    for (InFlightCalls scope = this; scope != null; scope = scope.parent) {
+      scope.calls.remove(call);
+    }
+  }
+
+  /**
+   * Runs the listener when this scope or a parent is cancelled, right away when it already is. It
+   * may run more than once.
+   */
+  void addListener(final Runnable listener) {
+    for (InFlightCalls scope = this; scope != null; scope = scope.parent) {
+      scope.listeners.add(listener);
+    }
+    if (isCancelled()) {
+      // Cancelled meanwhile, maybe without seeing this listener.
+      listener.run();
+    }
+  }
+
+  void removeListener(final Runnable listener) {
+    for (InFlightCalls scope = this; scope != null; scope = scope.parent) {
+      scope.listeners.remove(listener);
+    }
+  }
+
+  /**
+   * Sleeps for the given time, woken up early when cancelled.
+   *
+   * @return false when cancelled, before or while sleeping.
+   */
+  boolean sleep(final long nanos) throws InterruptedException {
+    final Thread sleeper = Thread.currentThread();
+    final Runnable wakeUp = () -> LockSupport.unpark(sleeper);
+    addListener(wakeUp);
+    try {
+      final long deadline = System.nanoTime() + nanos;
+      for (long remaining = nanos; remaining > 0 && !isCancelled();
+          remaining = deadline - System.nanoTime()) {
+        LockSupport.parkNanos(this, remaining);
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+      }
+      return !isCancelled();
+    } finally {
+      removeListener(wakeUp);
+    }
+  }
+
+  int size() {
+    return calls.size();
+  }
+}
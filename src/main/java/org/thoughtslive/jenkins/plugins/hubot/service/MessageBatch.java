@@ -0,0 +1,209 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import org.apache.log4j.Logger;
+import org.thoughtslive.jenkins.plugins.hubot.api.Message;
+import org.thoughtslive.jenkins.plugins.hubot.api.ResponseData;
+import org.thoughtslive.jenkins.plugins.hubot.outbox.Outbox;
+import org.thoughtslive.jenkins.plugins.hubot.service.HubotService.Delivery;
+import org.thoughtslive.jenkins.plugins.hubot.util.Common;
+
+/**
+ * Messages for the same site and room, sent together when the hubot script supports batches and
+ * one by one otherwise.
+ *
+ * @author Naresh Rayapati
+ */
+final class MessageBatch {
+
+  private static final Logger LOGGER = Logger.getLogger(MessageBatch.class.getName());
+
+  private final HubotService service;
+  private final String folder;
+  private final boolean notification;
+  private final List<Message> messages = new ArrayList<>();
+  private final List<Consumer<ResponseData<Void>>> callbacks = new ArrayList<>();
+  private boolean reserved;
+  // Sent by one worker at a time.
+  private int sent;
+  private Delivery delivery;
+
+  /**
+   * @param folder top-level folder of the jobs the messages are from, scheduled fairly against
+   *        the other folders.
+   * @param notification whether these are build notifications, which are held back by the rate
+   *        limit before sending and stored in the outbox when undelivered. Step messages acquire
+   *        the rate limit while sending and are only reported to the callback.
+   */
+  MessageBatch(final HubotService service, final String folder, final boolean notification) {
+    this.service = service;
+    this.folder = folder;
+    this.notification = notification;
+  }
+
+  static MessageBatch of(final String folder, final HubotService service, final Message message,
+      final Consumer<ResponseData<Void>> callback) {
+    final MessageBatch batch = new MessageBatch(service, folder, true);
+    batch.add(message, callback);
+    return batch;
+  }
+
+  static MessageBatch ofStep(final String folder, final HubotService service,
+      final Message message, final Consumer<ResponseData<Void>> callback) {
+    final MessageBatch batch = new MessageBatch(service, folder, false);
+    batch.add(message, callback);
+    return batch;
+  }
+
+  void add(final Message message, final Consumer<ResponseData<Void>> callback) {
+    messages.add(message);
+    callbacks.add(callback);
+  }
+
+  int size() {
+    return messages.size();
+  }
+
+  /**
+   * Priority of the most important message of the batch.
+   */
+  Priority priority() {
+    Priority priority = Priority.LOW;
+    for (Message message : messages) {
+      priority = priority.max(Priority.of(message));
+    }
+    return priority;
+  }
+
+  /**
+   * Numbers the messages in queue order, called once when the batch is queued.
+   */
+  void sequence() {
+    for (Message message : messages) {
+      message.setSeq(service.nextSequence());
+    }
+  }
+
+  String folder() {
+    return folder;
+  }
+
+  /**
+   * Url the messages are sent to, which shares the workers with the other urls.
+   */
+  String url() {
+    return String.valueOf(service.getUrl());
+  }
+
+  /**
+   * Requests allowed in flight to the url at once, {@code 0} when unlimited.
+   */
+  int concurrencyLimit() {
+    return service.getConcurrencyLimit();
+  }
+
+  /**
+   * Scope of the calls sending the messages, null when they are never cancelled.
+   */
+  InFlightCalls calls() {
+    return service.getCalls();
+  }
+
+  /**
+   * Site and room the messages are sent to, batches with the same key are sent in order.
+   */
+  String key() {
+    return service.getUrl() + "|" + service.getRoom();
+  }
+
+  /**
+   * Reserves the rate limit up front with the {@code QUEUE} policy, the batch is then sent
+   * without waiting.
+   *
+   * @return nano seconds to hold the batch back before sending it.
+   */
+  long reserve() {
+    if (!notification) {
+      return 0;
+    }
+    final long wait = service.reserve(messages.size());
+    reserved = wait >= 0;
+    return Math.max(0, wait);
+  }
+
+  /**
+   * Sends the messages, or as many as possible without waiting for the rate limit or the backoff
+   * between attempts.
+   *
+   * @return nano seconds to wait before calling it again, 0 once every message was sent.
+   */
+  long send() {
+    while (sent < messages.size()) {
+      if (delivery == null) {
+        delivery = sent == 0 && messages.size() > 1 && service.isBatchSupported()
+            ? new Delivery(messages, true, !reserved)
+            : new Delivery(Collections.singletonList(messages.get(sent)), false, !reserved);
+      }
+      ResponseData<Void> response = service.attempt(delivery);
+      final long delay = delivery.takeDelayNanos();
+      if (response == null) {
+        if (delay > 0) {
+          return delay;
+        }
+        // Neither sent nor deferred, rescheduling would only try the same again.
+        response = ResponseData.<Void>builder().successful(false).code(-1)
+            .error("Hubot: no response sending to room " + service.getRoom()
+                + ", message not sent.").build();
+      }
+      final int end = sent + delivery.getMessages().size();
+      delivery = null;
+      for (; sent < end; sent++) {
+        if (Common.isRetryable(response)) {
+          store(messages.get(sent));
+        }
+        complete(sent, response);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Gives up sending, messages are kept in the outbox when it is enabled.
+   */
+  void drop(final String error) {
+    // Those already sent were reported.
+    final int unsent = messages.size() - sent;
+    int stored = 0;
+    for (int i = sent; i < messages.size(); i++) {
+      stored += store(messages.get(i)) ? 1 : 0;
+    }
+    if (stored < unsent) {
+      LOGGER.warn(error + " (" + (unsent - stored) + " message(s))");
+      service.getMetrics().dropped(unsent - stored);
+    }
+    final ResponseData<Void> response = ResponseData.<Void>builder().successful(false).code(-1)
+        .error(stored > 0 ? error + " Stored in the outbox for redelivery." : error).build();
+    for (int i = sent; i < callbacks.size(); i++) {
+      complete(i, response);
+    }
+  }
+
+  private boolean store(final Message message) {
+    if (!notification) {
+      return false;
+    }
+    final Outbox outbox = Outbox.get();
+    return outbox != null && outbox.offer(service.getSite(), service.getRoom(), message);
+  }
+
+  private void complete(final int index, final ResponseData<Void> response) {
+    try {
+      callbacks.get(index).accept(response);
+    } catch (RuntimeException e) {
+      LOGGER.error("Hubot: notification callback failed", e);
+    }
+  }
+}
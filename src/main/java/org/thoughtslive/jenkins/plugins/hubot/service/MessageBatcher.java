@@ -0,0 +1,134 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import jenkins.util.Timer;
+import org.thoughtslive.jenkins.plugins.hubot.api.Message;
+import org.thoughtslive.jenkins.plugins.hubot.api.ResponseData;
+
+/**
+ * Coalesces messages for the same site, room and folder, a batch is released once it reaches the maximum
+ * size or when the linger window since its first message elapses.
+ *
+ * @author Naresh Rayapati
+ */
+final class MessageBatcher {
+
+  private final Consumer<MessageBatch> sink;
+  // Guarded by this.
+  private long lingerMillis;
+  private int maxBatchSize;
+  private final Map<String, MessageBatch> open = new HashMap<>();
+  private final Deque<MessageBatch> released = new ArrayDeque<>();
+  // Held while handing released batches to the sink, so that they keep their order.
+  private final Object handOff = new Object();
+
+  /**
+   * @param sink receives the released batches, it must not block, batches are released from timer
+   *        threads too.
+   */
+  MessageBatcher(final long lingerMillis, final int maxBatchSize,
+      final Consumer<MessageBatch> sink) {
+    this.lingerMillis = lingerMillis;
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+    this.sink = sink;
+  }
+
+  /**
+   * Changes the linger window and the maximum size, the open batches are released right away when
+   * batching is turned off.
+   */
+  void configure(final long lingerMillis, final int maxBatchSize) {
+    synchronized (this) {
+      this.lingerMillis = lingerMillis;
+      this.maxBatchSize = Math.max(1, maxBatchSize);
+      if (!isBatching()) {
+        released.addAll(open.values());
+        open.clear();
+      }
+    }
+    handOff();
+  }
+
+  /**
+   * Whether messages are batched, otherwise each one is released as it is added.
+   */
+  synchronized boolean isBatching() {
+    return lingerMillis > 0 && maxBatchSize > 1;
+  }
+
+  void add(final String folder, final HubotService service, final Message message,
+      final Consumer<ResponseData<Void>> callback) {
+    final String key = service.getUrl() + "|" + service.getRoom() + "|" + folder;
+    synchronized (this) {
+      MessageBatch batch = open.get(key);
+      if (batch == null) {
+        batch = new MessageBatch(service, folder, true);
+        open.put(key, batch);
+        if (isBatching()) {
+          final MessageBatch lingering = batch;
+          Timer.get().schedule(() -> flush(key, lingering), lingerMillis, TimeUnit.MILLISECONDS);
+        }
+      }
+      batch.add(message, callback);
+      if (batch.size() >= maxBatchSize || !isBatching()) {
+        open.remove(key);
+        released.add(batch);
+      }
+    }
+    handOff();
+  }
+
+  /**
+   * Releases the open batches of the site and room right away, so that a message queued next is
+   * sent after them.
+   */
+  void release(final HubotService service) {
+    final String prefix = service.getUrl() + "|" + service.getRoom() + "|";
+    synchronized (this) {
+      final Iterator<Map.Entry<String, MessageBatch>> batches = open.entrySet().iterator();
+      while (batches.hasNext()) {
+        final Map.Entry<String, MessageBatch> batch = batches.next();
+        if (batch.getKey().startsWith(prefix)) {
+          batches.remove();
+          released.add(batch.getValue());
+        }
+      }
+    }
+    handOff();
+  }
+
+  private void flush(final String key, final MessageBatch batch) {
+    synchronized (this) {
+      if (!open.remove(key, batch)) {
+        // Already released because it was full.
+        return;
+      }
+      released.add(batch);
+    }
+    handOff();
+  }
+
+  /**
+   * Hands the released batches to the sink outside of the lock, in the order they were released.
+   * Those released by the caller are handed off once it returns, even when another thread took
+   * them.
+   */
+  private void handOff() {
+    synchronized (handOff) {
+      MessageBatch batch;
+      while ((batch = poll()) != null) {
+        sink.accept(batch);
+      }
+    }
+  }
+
+  private synchronized MessageBatch poll() {
+    return released.poll();
+  }
+}
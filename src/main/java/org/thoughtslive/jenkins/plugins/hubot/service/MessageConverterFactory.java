@@ -0,0 +1,97 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.thoughtslive.jenkins.plugins.hubot.api.Message;
+import org.thoughtslive.jenkins.plugins.hubot.util.Json;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/**
+ * Writes {@link Message} bodies with the shared writers from {@link Json}, straight into the
+ * request sink instead of an intermediate byte array.
+ *
+ * @author Naresh Rayapati
+ */
+final class MessageConverterFactory extends Converter.Factory {
+
+  private static final MediaType MEDIA_TYPE = MediaType.get("application/json; charset=UTF-8");
+
+  @Override
+  public Converter<?, RequestBody> requestBodyConverter(final Type type,
+      final Annotation[] parameterAnnotations, final Annotation[] methodAnnotations,
+      final Retrofit retrofit) {
+    if (type == Message.class) {
+      return value -> new StreamingBody(Json.MESSAGE_WRITER, value);
+    }
+    if (type instanceof ParameterizedType && ((ParameterizedType) type).getRawType() == List.class
+        && ((ParameterizedType) type).getActualTypeArguments()[0] == Message.class) {
+      return value -> new StreamingBody(Json.MESSAGES_WRITER, value);
+    }
+    return null;
+  }
+
+  /**
+   * Request body serialized while it is written, its length is unknown up front.
+   */
+  static final class StreamingBody extends RequestBody {
+
+    private final ObjectWriter writer;
+    private final Object value;
+    private volatile long bytesWritten = -1;
+
+    StreamingBody(final ObjectWriter writer, final Object value) {
+      this.writer = writer;
+      this.value = value;
+    }
+
+    @Override
+    public MediaType contentType() {
+      return MEDIA_TYPE;
+    }
+
+    @Override
+    public void writeTo(final BufferedSink sink) throws IOException {
+      final CountingOutputStream out = new CountingOutputStream(sink.outputStream());
+      writer.writeValue(out, value);
+      bytesWritten = out.count;
+    }
+
+    /**
+     * Returns the size of the last written body, -1 until it is written.
+     */
+    long getBytesWritten() {
+      return bytesWritten;
+    }
+  }
+
+  private static final class CountingOutputStream extends FilterOutputStream {
+
+    private long count;
+
+    CountingOutputStream(final OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+  }
+}
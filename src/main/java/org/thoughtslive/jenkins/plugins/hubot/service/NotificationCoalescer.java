@@ -0,0 +1,166 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import jenkins.util.Timer;
+import org.thoughtslive.jenkins.plugins.hubot.api.Message;
+import org.thoughtslive.jenkins.plugins.hubot.api.ResponseData;
+
+/**
+ * Suppresses repeated build notifications of the same status for the same job and room. The first
+ * one is sent right away, repeats within the window are merged into one summary message sent when
+ * the window elapses. A change of status is sent right away too, and drops the summary of older
+ * builds, so a summary never follows the notification of a newer build.
+ *
+ * @author Naresh Rayapati
+ */
+final class NotificationCoalescer {
+
+  private final Sink sink;
+  // Guarded by this.
+  private long windowMillis;
+  private final Map<String, Window> open = new HashMap<>();
+
+  NotificationCoalescer(final long windowMillis, final Sink sink) {
+    this.windowMillis = windowMillis;
+    this.sink = sink;
+  }
+
+  /**
+   * Changes the window, those open keep theirs.
+   */
+  synchronized void configure(final long windowMillis) {
+    this.windowMillis = windowMillis;
+  }
+
+  /**
+   * Whether notifications are coalesced, otherwise they are all sent.
+   */
+  synchronized boolean isCoalescing() {
+    return windowMillis > 0;
+  }
+
+  /**
+   * Sends the message, unless one with the same status was the last sent for the job and room
+   * within the window.
+   *
+   * @return false when the message was suppressed.
+   */
+  boolean add(final String job, final int build, final HubotService service,
+      final Message message, final Consumer<ResponseData<Void>> callback) {
+    final String key = job + "|" + service.getUrl() + "|" + service.getRoom();
+    synchronized (this) {
+      final Window window = open.get(key);
+      if (window == null) {
+        open(key, job, message.getStatus(), build);
+      } else if (Objects.equals(window.status, message.getStatus())) {
+        window.suppress(build, service, message, callback);
+        service.getMetrics().suppressed(1);
+        return false;
+      } else {
+        window.sent(message.getStatus(), build);
+      }
+    }
+    sink.dispatch(job, service, message, callback, true);
+    return true;
+  }
+
+  private void open(final String key, final String job, final String status, final int build) {
+    final Window window = new Window(job);
+    window.sent(status, build);
+    open.put(key, window);
+    Timer.get().schedule(() -> close(key, window), windowMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void close(final String key, final Window window) {
+    synchronized (this) {
+      if (!open.remove(key, window) || !window.hasSummary()) {
+        return;
+      }
+      // Keeps coalescing while the job keeps repeating.
+      open(key, window.job, window.message.getStatus(), window.build);
+    }
+    // On a timer thread, which must not wait for room in the queue.
+    sink.dispatch(window.job, window.service, window.summary(), window.callback, false);
+  }
+
+  /**
+   * Receives the messages to send.
+   */
+  interface Sink {
+
+    /**
+     * Sends a message.
+     *
+     * @param blocking whether the caller may wait for room in the queue.
+     */
+    void dispatch(String job, HubotService service, Message message,
+        Consumer<ResponseData<Void>> callback, boolean blocking);
+  }
+
+  /**
+   * Last notification sent for one job and room, and the latest one suppressed since.
+   */
+  private static final class Window {
+
+    private final String job;
+    private String status;
+    private int sent;
+    private int suppressed;
+    private int build;
+    private HubotService service;
+    private Message message;
+    private Consumer<ResponseData<Void>> callback;
+
+    Window(final String job) {
+      this.job = job;
+    }
+
+    /**
+     * Records a notification sent, the summary is dropped when it is about an older build.
+     */
+    void sent(final String status, final int build) {
+      this.status = status;
+      this.sent = Math.max(sent, build);
+      if (!hasSummary()) {
+        suppressed = 0;
+        service = null;
+        message = null;
+        callback = null;
+      }
+    }
+
+    void suppress(final int build, final HubotService service, final Message message,
+        final Consumer<ResponseData<Void>> callback) {
+      if (this.message != null && !Objects.equals(this.message.getStatus(), message.getStatus())) {
+        // Repeats of the previous status, sent before the change of status.
+        suppressed = 0;
+      }
+      this.suppressed++;
+      this.build = build;
+      this.service = service;
+      this.message = message;
+      this.callback = callback;
+    }
+
+    boolean hasSummary() {
+      return suppressed > 0 && build > sent;
+    }
+
+    @SuppressWarnings("unchecked")
+    Message summary() {
+      final Map extraData = message.getExtraData() == null ? new LinkedHashMap<>()
+          : new LinkedHashMap<>(message.getExtraData());
+      extraData.put("coalesced", suppressed);
+      extraData.put("latestBuild", build);
+      message.setExtraData(extraData);
+      message.setMessage(message.getMessage() + " (repeated " + suppressed
+          + (suppressed == 1 ? " time" : " times") + ", latest build #" + build + ")");
+      return message;
+    }
+  }
+}
@@ -0,0 +1,1021 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import hudson.Util;
+import hudson.init.Terminator;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import jenkins.util.Timer;
+import org.apache.log4j.Logger;
+import org.thoughtslive.jenkins.plugins.hubot.api.Message;
+import org.thoughtslive.jenkins.plugins.hubot.api.ResponseData;
+import org.thoughtslive.jenkins.plugins.hubot.config.GlobalConfig;
+import org.thoughtslive.jenkins.plugins.hubot.metrics.FolderMetrics;
+import org.thoughtslive.jenkins.plugins.hubot.metrics.HubotMetrics;
+
+/**
+ * Bounded queue and worker pool, which sends build notifications off the build thread. Messages
+ * are queued in one lane per site and room, a lane is sent by one worker at a time, so messages to
+ * the same room keep their order while different rooms are sent in parallel.
+ *
+ * <p>Lanes wait for a worker by {@link Priority}, a lane goes with the most important message it
+ * holds. When the queue is full the least important messages are shed first.
+ *
+ * <p>Waiting lanes are grouped by the top-level folder of the job of their next message. Folders
+ * take turns in proportion to their weight, so a burst from one folder gets its share of the
+ * workers instead of delaying every other folder.
+ *
+ * <p>The lanes of one url take at most the workers per url, fewer when its adaptive limit is lower,
+ * so a slow or hung hubot can't hold up the other sites. A message waiting for the rate limit or
+ * the backoff between attempts holds its lane back without occupying a worker.
+ *
+ * @author Naresh Rayapati
+ */
+public final class NotificationDispatcher {
+
+  private static final Logger LOGGER = Logger.getLogger(NotificationDispatcher.class.getName());
+
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+  private static final long KEEP_ALIVE_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+  private static final String NOT_SENT_BEFORE_SHUTDOWN =
+      "Hubot: notification not sent before shutdown.";
+
+  /**
+   * Virtual time a folder of weight 1 is charged for each message sent.
+   */
+  private static final long STRIDE = 1 << 20;
+
+  /**
+   * Folder of messages queued without a job.
+   */
+  static final String NO_FOLDER = "(none)";
+
+  private static NotificationDispatcher instance;
+
+  private final ThreadFactory threadFactory;
+
+  private final MessageBatcher batcher;
+
+  private final NotificationCoalescer coalescer;
+
+  private volatile OverflowPolicy overflowPolicy;
+
+  // Guarded by this.
+  private int maxWorkers;
+  private int maxWorkersPerUrl;
+  private int queueSize;
+  private Map<String, Integer> folderWeights;
+  private final Map<String, Lane> lanes = new HashMap<>();
+  private final Map<String, Folder> folders = new HashMap<>();
+  private final Set<Folder> active = new HashSet<>();
+  // Lanes holding a worker, and lanes waiting for one of them to finish, per url.
+  private final Map<String, Integer> sending = new HashMap<>();
+  private final Map<String, Deque<LaneRun>> parked = new HashMap<>();
+  private final Set<Thread> workers = new HashSet<>();
+  private int idle;
+  // Callers of CALLER_RUNS waiting for a lane to send.
+  private int callers;
+  private int ready;
+  private int queued;
+  private int running;
+  private long order;
+  private long pass;
+  private boolean stopped;
+
+  NotificationDispatcher(final int workers, final int queueSize,
+      final OverflowPolicy overflowPolicy) {
+    this(workers, queueSize, overflowPolicy, 0, 1);
+  }
+
+  NotificationDispatcher(final int workers, final int queueSize,
+      final OverflowPolicy overflowPolicy, final long batchLingerMillis, final int batchMaxSize) {
+    this(workers, queueSize, overflowPolicy, batchLingerMillis, batchMaxSize, 0);
+  }
+
+  NotificationDispatcher(final int workers, final int queueSize,
+      final OverflowPolicy overflowPolicy, final long batchLingerMillis, final int batchMaxSize,
+      final long coalesceWindowMillis) {
+    this(workers, queueSize, overflowPolicy, batchLingerMillis, batchMaxSize,
+        coalesceWindowMillis, Collections.emptyMap());
+  }
+
+  NotificationDispatcher(final int workers, final int queueSize,
+      final OverflowPolicy overflowPolicy, final long batchLingerMillis, final int batchMaxSize,
+      final long coalesceWindowMillis, final Map<String, Integer> folderWeights) {
+    this(workers, queueSize, overflowPolicy, batchLingerMillis, batchMaxSize,
+        coalesceWindowMillis, folderWeights, 0);
+  }
+
+  /**
+   * @param workersPerUrl workers the lanes of one url may hold at once, {@code 0} for all of them.
+   */
+  NotificationDispatcher(final int workers, final int queueSize,
+      final OverflowPolicy overflowPolicy, final long batchLingerMillis, final int batchMaxSize,
+      final long coalesceWindowMillis, final Map<String, Integer> folderWeights,
+      final int workersPerUrl) {
+    this.overflowPolicy = overflowPolicy == null ? OverflowPolicy.DROP_NEWEST : overflowPolicy;
+    this.queueSize = Math.max(1, queueSize);
+    this.maxWorkers = Math.max(1, workers);
+    this.maxWorkersPerUrl = Math.max(0, workersPerUrl);
+    this.folderWeights = folderWeights;
+    this.threadFactory =
+        new NamingThreadFactory(new DaemonThreadFactory(), "Hubot notification dispatcher");
+    this.batcher =
+        new MessageBatcher(batchLingerMillis, batchMaxSize, batch -> submit(batch, false));
+    this.coalescer = new NotificationCoalescer(coalesceWindowMillis, this::dispatch);
+  }
+
+  /**
+   * Returns the dispatcher, created from {@link GlobalConfig} on first use.
+   */
+  public static synchronized NotificationDispatcher get() {
+    if (instance == null) {
+      final GlobalConfig config = GlobalConfig.get();
+      instance = config == null ? new NotificationDispatcher(GlobalConfig.DEFAULT_WORKERS,
+          GlobalConfig.DEFAULT_QUEUE_SIZE, OverflowPolicy.DROP_NEWEST) : create(config);
+    }
+    return instance;
+  }
+
+  /**
+   * Applies the given settings to the dispatcher, messages already queued keep their place, so
+   * every room is still sent by one dispatcher in order.
+   */
+  public static synchronized void reconfigure(final GlobalConfig config) {
+    if (instance != null) {
+      instance.configure(config.getDispatcherWorkers(), config.getDispatcherQueueSize(),
+          config.getOverflowPolicy(), config.getBatchLingerMillis(), config.getBatchMaxSize(),
+          TimeUnit.SECONDS.toMillis(config.getCoalesceWindowSeconds()),
+          parseWeights(config.getFolderWeights()), config.getDispatcherWorkersPerUrl());
+    }
+  }
+
+  private static NotificationDispatcher create(final GlobalConfig config) {
+    return new NotificationDispatcher(config.getDispatcherWorkers(),
+        config.getDispatcherQueueSize(), config.getOverflowPolicy(),
+        config.getBatchLingerMillis(), config.getBatchMaxSize(),
+        TimeUnit.SECONDS.toMillis(config.getCoalesceWindowSeconds()),
+        parseWeights(config.getFolderWeights()), config.getDispatcherWorkersPerUrl());
+  }
+
+  /**
+   * Changes the settings in place. Workers are added when there are more lanes waiting, those above
+   * the new count stop once they finish their lane. Batching turned off releases the open batches.
+   */
+  void configure(final int workers, final int queueSize, final OverflowPolicy overflowPolicy,
+      final long batchLingerMillis, final int batchMaxSize, final long coalesceWindowMillis,
+      final Map<String, Integer> folderWeights, final int workersPerUrl) {
+    batcher.configure(batchLingerMillis, batchMaxSize);
+    coalescer.configure(coalesceWindowMillis);
+    this.overflowPolicy = overflowPolicy == null ? OverflowPolicy.DROP_NEWEST : overflowPolicy;
+    synchronized (this) {
+      this.queueSize = Math.max(1, queueSize);
+      this.maxWorkers = Math.max(1, workers);
+      this.maxWorkersPerUrl = Math.max(0, workersPerUrl);
+      this.folderWeights = folderWeights;
+      for (Folder folder : folders.values()) {
+        folder.weight = Math.max(1, folderWeights.getOrDefault(folder.name, 1));
+      }
+      for (int waiting = ready - idle; waiting > 0 && this.workers.size() < maxWorkers;
+          waiting--) {
+        startWorker();
+      }
+      // Wakes the callers waiting for room in the queue.
+      notifyAll();
+    }
+  }
+
+  @Terminator
+  public static synchronized void shutdown() throws InterruptedException {
+    if (instance != null) {
+      if (!instance.awaitIdle(TimeUnit.SECONDS.toNanos(SHUTDOWN_TIMEOUT_SECONDS))) {
+        LOGGER.warn("Hubot: " + instance.getQueueDepth()
+            + " notification(s) were not sent before shutdown.");
+      }
+      for (Task task : instance.stop()) {
+        task.drop(NOT_SENT_BEFORE_SHUTDOWN);
+      }
+      instance = null;
+    }
+  }
+
+  /**
+   * Parses the folder weights, {@code folder=weight} entries separated by new lines or commas.
+   * Invalid entries are logged and ignored.
+   *
+   * @param weights weights as configured, may be null.
+   * @return weight per top-level folder.
+   */
+  static Map<String, Integer> parseWeights(final String weights) {
+    final Map<String, Integer> parsed = new HashMap<>();
+    if (weights == null) {
+      return parsed;
+    }
+    for (String entry : weights.split("[,\\n]")) {
+      if (entry.isBlank()) {
+        continue;
+      }
+      final int separator = entry.lastIndexOf('=');
+      try {
+        parsed.put(entry.substring(0, separator).trim(),
+            Math.max(1, Integer.parseInt(entry.substring(separator + 1).trim())));
+      } catch (RuntimeException e) {
+        LOGGER.warn("Hubot: ignoring invalid folder weight: " + entry.trim());
+      }
+    }
+    return parsed;
+  }
+
+  /**
+   * Returns the top-level folder of a job, the job itself when it isn't in a folder.
+   *
+   * @param job full name of the job, may be null.
+   */
+  static String folderOf(final String job) {
+    if (Util.fixEmpty(job) == null) {
+      return NO_FOLDER;
+    }
+    final int separator = job.indexOf('/');
+    return separator < 0 ? job : job.substring(0, separator);
+  }
+
+  /**
+   * Queues a message which isn't about a job, it is scheduled with the other messages without one.
+   */
+  public void dispatch(final HubotService service, final Message message,
+      final Consumer<ResponseData<Void>> callback) {
+    dispatch(null, service, message, callback);
+  }
+
+  /**
+   * Queues a message, the callback receives the response once it is sent, or an error response
+   * when the queue is full and the message is dropped. Messages for the same site and room may be
+   * coalesced into one request when batching is enabled.
+   *
+   * @param job full name of the job the message is about, its top-level folder shares the workers
+   *        with the other folders.
+   * @param service service to send the message with.
+   * @param message actual message to be sent.
+   * @param callback receives the outcome, on a dispatcher thread.
+   */
+  public void dispatch(final String job, final HubotService service, final Message message,
+      final Consumer<ResponseData<Void>> callback) {
+    dispatch(job, service, message, callback, true);
+  }
+
+  /**
+   * Queues a message.
+   *
+   * @param blocking whether the caller may send queued messages when the queue is full, a timer
+   *        thread must not. {@link OverflowPolicy#CALLER_RUNS} drops the oldest message instead
+   *        when it can't.
+   */
+  private void dispatch(final String job, final HubotService service, final Message message,
+      final Consumer<ResponseData<Void>> callback, final boolean blocking) {
+    final String folder = folderOf(job);
+    if (batcher.isBatching()) {
+      if (blocking && overflowPolicy == OverflowPolicy.CALLER_RUNS) {
+        // Batches are queued without waiting, from timer threads too, the caller makes room.
+        callerRuns(Priority.of(message));
+      }
+      batcher.add(folder, service, message, callback);
+    } else {
+      submit(MessageBatch.of(folder, service, message, callback), blocking);
+    }
+  }
+
+  /**
+   * Queues a build notification, repeats of the same status for the same job and room within the
+   * coalescing window are suppressed and summarized in one message at the end of the window,
+   * unless a newer build was notified with another status meanwhile.
+   *
+   * @param job full name of the job.
+   * @param build number of the build.
+   * @param service service to send the message with.
+   * @param message actual message to be sent.
+   * @param callback receives the outcome, on a dispatcher thread.
+   * @return false when the message was suppressed, the callback is not called then.
+   */
+  public boolean dispatch(final String job, final int build, final HubotService service,
+      final Message message, final Consumer<ResponseData<Void>> callback) {
+    if (coalescer.isCoalescing()) {
+      return coalescer.add(job, build, service, message, callback);
+    }
+    dispatch(job, service, message, callback);
+    return true;
+  }
+
+  /**
+   * Queues a message of a step, sent in order with the build notifications to the same site and
+   * room. It is neither batched nor coalesced, and acquires the rate limit while sending.
+   *
+   * @param job full name of the job running the step.
+   * @param service service to send the message with.
+   * @param message actual message to be sent.
+   * @param callback receives the outcome, on a dispatcher thread.
+   */
+  public void send(final String job, final HubotService service, final Message message,
+      final Consumer<ResponseData<Void>> callback) {
+    batcher.release(service);
+    submit(MessageBatch.ofStep(folderOf(job), service, message, callback), true);
+  }
+
+  private void submit(final MessageBatch batch, final boolean blocking) {
+    if (blocking && overflowPolicy == OverflowPolicy.CALLER_RUNS) {
+      callerRuns(batch.priority());
+    }
+    final Task task = new Task(batch, batch.priority(), System.nanoTime());
+    task.watch(() -> resume(task, true));
+    Task dropped = null;
+    Lane ready = null;
+    synchronized (this) {
+      task.folder = folder(batch.folder());
+      if (queued >= queueSize) {
+        dropped = overflow(task, blocking);
+      }
+      // Numbered in queue order, dropped messages too so that they leave a gap.
+      batch.sequence();
+      if (dropped != task) {
+        // Reserved once admitted, a dropped message doesn't use up the rate limit.
+        task.notBefore = System.nanoTime() + batch.reserve();
+        final Lane lane = lanes.computeIfAbsent(batch.key(), key -> new Lane(key, batch));
+        task.order = ++order;
+        task.lane = lane;
+        task.folder.tasks++;
+        lane.add(task);
+        queued++;
+        if (!lane.scheduled) {
+          lane.scheduled = true;
+          ready = lane;
+        } else if (lane.waiting != null && lane.waiting.priority.compareTo(task.priority) > 0) {
+          // Moves the lane ahead, the message can only be sent after those queued before it.
+          unqueue(lane.waiting);
+          lane.waiting = null;
+          ready = lane;
+        }
+      } else {
+        prune(task.folder);
+      }
+    }
+    if (dropped != null) {
+      dropped.drop();
+    }
+    if (ready != null) {
+      schedule(ready);
+    }
+  }
+
+  /**
+   * Sends queued messages on the caller's thread while the queue is full, lanes in the same order
+   * as the workers take them, so the new message then keeps its place in the room order. Returns
+   * right away when a less important message can be shed instead.
+   */
+  private void callerRuns(final Priority priority) {
+    while (true) {
+      final LaneRun run;
+      synchronized (this) {
+        if (stopped || queued < queueSize) {
+          return;
+        }
+        final Task lowest = lowestQueued();
+        if (lowest != null && lowest.priority.compareTo(priority) > 0) {
+          return;
+        }
+        run = next();
+        if (run == null) {
+          // Every lane is sending or held back, waits for one of them.
+          callers++;
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          } finally {
+            callers--;
+          }
+          continue;
+        }
+      }
+      try {
+        sendNext(run.lane);
+      } catch (RuntimeException e) {
+        LOGGER.error("Hubot: unable to send notification", e);
+      } finally {
+        synchronized (this) {
+          finished(run.lane);
+        }
+      }
+    }
+  }
+
+  /**
+   * Blocks the caller until the queue has room, when another caller took the room made by
+   * {@link #callerRuns(Priority)}.
+   *
+   * @return false when interrupted while waiting.
+   */
+  // Guarded by this.
+  private boolean awaitRoom() {
+    try {
+      while (queued >= queueSize) {
+        wait();
+      }
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Makes room for a message when the queue is full, a less important message is always shed
+   * first, otherwise the overflow policy applies.
+   *
+   * @param blocking whether the caller may wait for room.
+   * @return the message to drop.
+   */
+  private Task overflow(final Task task, final boolean blocking) {
+    final Task lowest = lowestQueued();
+    if (lowest != null && lowest.priority.compareTo(task.priority) > 0) {
+      return remove(lowest);
+    }
+    switch (overflowPolicy) {
+      case CALLER_RUNS:
+        // A timer thread sending or waiting for room could hold back the lanes it reschedules.
+        if (!blocking) {
+          return dropOldest(lowest, task);
+        }
+        // Interrupted while waiting, the message is dropped then.
+        return awaitRoom() ? null : task;
+      case DROP_OLDEST:
+        return dropOldest(lowest, task);
+      case DROP_NEWEST:
+      default:
+        return task;
+    }
+  }
+
+  // Guarded by this.
+  private Task dropOldest(final Task lowest, final Task task) {
+    return lowest != null && lowest.priority == task.priority ? remove(lowest) : task;
+  }
+
+  /**
+   * Returns the oldest of the least important queued messages.
+   */
+  private Task lowestQueued() {
+    Task lowest = null;
+    for (Lane lane : lanes.values()) {
+      for (Task task : lane.tasks) {
+        if (lowest == null || task.priority.compareTo(lowest.priority) > 0
+            || task.priority == lowest.priority && task.order < lowest.order) {
+          lowest = task;
+        }
+      }
+    }
+    return lowest;
+  }
+
+  // Guarded by this.
+  private Task remove(final Task task) {
+    task.lane.remove(task);
+    queued--;
+    forget(task);
+    return task;
+  }
+
+  // Guarded by this.
+  private Folder folder(final String name) {
+    return folders.computeIfAbsent(name,
+        key -> new Folder(key, folderWeights.getOrDefault(key, 1)));
+  }
+
+  /**
+   * Counts a message out of its folder, once sent or dropped.
+   */
+  private void forget(final Task task) {
+    task.folder.tasks--;
+    prune(task.folder);
+  }
+
+  /**
+   * Removes a folder without messages, so that folders of jobs gone don't stay forever. It starts
+   * over with the current virtual time when it comes back, like any idle folder.
+   */
+  private void prune(final Folder folder) {
+    if (folder.tasks == 0 && folder.runs.isEmpty()) {
+      folders.remove(folder.name, folder);
+    }
+  }
+
+  /**
+   * Puts the lane in line for a worker, with the folder of its next message.
+   */
+  private void schedule(final Lane lane) {
+    List<Task> dropped = null;
+    synchronized (this) {
+      final Task next = lane.tasks.peek();
+      if (next == null) {
+        release(lane);
+      } else if (stopped) {
+        dropped = new ArrayList<>(lane.tasks);
+        queued -= dropped.size();
+        lane.clear();
+        release(lane);
+        for (Task task : dropped) {
+          forget(task);
+        }
+        notifyAll();
+      } else {
+        final LaneRun run = new LaneRun(lane, lane.priority(), next.folder, ++order);
+        lane.waiting = run;
+        enqueue(run);
+      }
+    }
+    if (dropped != null) {
+      for (Task task : dropped) {
+        task.drop(NOT_SENT_BEFORE_SHUTDOWN);
+      }
+    }
+  }
+
+  // Guarded by this.
+  private void enqueue(final LaneRun run) {
+    final Folder folder = run.folder;
+    if (folder.runs.isEmpty()) {
+      // An idle folder doesn't save up turns.
+      folder.pass = Math.max(folder.pass, pass);
+      active.add(folder);
+    }
+    folder.runs.add(run);
+    ready++;
+    if (idle > 0 || callers > 0) {
+      notifyAll();
+    }
+    if (ready > idle && workers.size() < maxWorkers) {
+      startWorker();
+    }
+  }
+
+  // Guarded by this.
+  private void startWorker() {
+    final Thread worker = threadFactory.newThread(this::work);
+    workers.add(worker);
+    worker.start();
+  }
+
+  // Guarded by this.
+  private void unqueue(final LaneRun run) {
+    if (run.folder.runs.remove(run)) {
+      ready--;
+      if (run.folder.runs.isEmpty()) {
+        active.remove(run.folder);
+        prune(run.folder);
+      }
+    } else {
+      final Deque<LaneRun> waiting = parked.get(run.lane.url);
+      if (waiting != null && waiting.remove(run) && waiting.isEmpty()) {
+        parked.remove(run.lane.url);
+      }
+    }
+  }
+
+  /**
+   * Takes the most urgent lane of the folder with the least virtual time, which is then charged
+   * inversely to its weight. Lanes of a url already sending with as many workers as it may use
+   * are set aside until one of them finishes.
+   */
+  private LaneRun next() {
+    while (true) {
+      Folder next = null;
+      for (Folder folder : active) {
+        if (next == null || folder.pass < next.pass) {
+          next = folder;
+        }
+      }
+      if (next == null) {
+        return null;
+      }
+      final LaneRun run = next.runs.poll();
+      ready--;
+      if (next.runs.isEmpty()) {
+        active.remove(next);
+        prune(next);
+      }
+      final String url = run.lane.url;
+      if (sending.getOrDefault(url, 0) >= workersPerUrl(run.lane)) {
+        parked.computeIfAbsent(url, key -> new ArrayDeque<>()).add(run);
+        continue;
+      }
+      sending.merge(url, 1, Integer::sum);
+      pass = next.pass;
+      next.pass += STRIDE / next.weight;
+      return run;
+    }
+  }
+
+  /**
+   * Workers the lanes of a url may hold at once, its configured share and at most its adaptive
+   * limit.
+   */
+  private int workersPerUrl(final Lane lane) {
+    final int share = maxWorkersPerUrl > 0 ? Math.min(maxWorkersPerUrl, maxWorkers) : maxWorkers;
+    final int limit = lane.batch.concurrencyLimit();
+    return limit > 0 ? Math.min(share, limit) : share;
+  }
+
+  /**
+   * Gives back the worker of a lane, a lane of the same url set aside is put in line again.
+   */
+  private void finished(final Lane lane) {
+    sending.computeIfPresent(lane.url, (url, count) -> count > 1 ? count - 1 : null);
+    final Deque<LaneRun> waiting = parked.get(lane.url);
+    if (waiting != null) {
+      enqueue(waiting.poll());
+      if (waiting.isEmpty()) {
+        parked.remove(lane.url);
+      }
+    }
+  }
+
+  private void work() {
+    try {
+      while (true) {
+        final LaneRun run;
+        synchronized (this) {
+          run = take();
+        }
+        if (run == null) {
+          return;
+        }
+        try {
+          sendNext(run.lane);
+        } catch (RuntimeException e) {
+          LOGGER.error("Hubot: unable to send notification", e);
+        } finally {
+          synchronized (this) {
+            finished(run.lane);
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      // Stopped at shutdown.
+    } finally {
+      synchronized (this) {
+        workers.remove(Thread.currentThread());
+      }
+    }
+  }
+
+  /**
+   * Waits for the next lane, the worker stops once it was idle for the keep alive time.
+   *
+   * @return null when the worker must stop, it is not counted as a worker anymore then.
+   */
+  private LaneRun take() throws InterruptedException {
+    final long deadline = System.nanoTime() + KEEP_ALIVE_NANOS;
+    // Workers above the count stop, after the settings were changed.
+    while (!stopped && workers.size() <= maxWorkers) {
+      final LaneRun run = next();
+      if (run != null) {
+        return run;
+      }
+      final long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        break;
+      }
+      idle++;
+      try {
+        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+      } finally {
+        idle--;
+      }
+    }
+    workers.remove(Thread.currentThread());
+    return null;
+  }
+
+  /**
+   * Sends the oldest message of the lane, then puts the lane back in line, so busy rooms take
+   * turns with the others.
+   */
+  private void sendNext(final Lane lane) {
+    final Task task;
+    synchronized (this) {
+      lane.waiting = null;
+      task = lane.tasks.peek();
+      if (task == null) {
+        // Emptied by the overflow policy.
+        release(lane);
+        return;
+      }
+      final long wait = task.notBefore - System.nanoTime();
+      if (wait > 0) {
+        // Held back by the rate limit without occupying a worker, the rest of the room waits.
+        hold(lane, task, wait);
+        return;
+      }
+      lane.remove(task);
+      queued--;
+      running++;
+      notifyAll();
+    }
+    if (!task.started) {
+      task.started = true;
+      task.folder.metrics.waited(System.nanoTime() - task.queuedAt);
+    }
+    boolean more = false;
+    long delay = 0;
+    try {
+      delay = task.batch.send();
+    } finally {
+      synchronized (this) {
+        running--;
+        if (delay > 0) {
+          // Waits for the rate limit or the backoff ahead of the rest of the room.
+          task.notBefore = System.nanoTime() + delay;
+          lane.push(task);
+          queued++;
+          hold(lane, task, delay);
+        } else {
+          forget(task);
+          if (lane.tasks.isEmpty()) {
+            release(lane);
+          } else {
+            more = true;
+          }
+        }
+        notifyAll();
+      }
+      if (delay <= 0) {
+        task.unwatch();
+      }
+      if (more) {
+        schedule(lane);
+      }
+    }
+  }
+
+  /**
+   * Holds the lane back until its next message may be sent, it doesn't wait for a worker then.
+   */
+  private void hold(final Lane lane, final Task task, final long wait) {
+    long delay = wait;
+    if (task.calls != null && task.calls.isCancelled()) {
+      // Cancelled before it was held, reported without waiting.
+      task.notBefore = System.nanoTime();
+      delay = 0;
+    }
+    lane.held = task;
+    Timer.get().schedule(() -> resume(task, false), delay, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Puts the lane held back for a message in line again, once the wait is over or right away when
+   * the calls of the message are cancelled, it is then reported as cancelled without waiting.
+   */
+  private void resume(final Task task, final boolean cancelled) {
+    final Lane lane;
+    synchronized (this) {
+      lane = task.lane;
+      if (lane == null || lane.held != task) {
+        // Not held, or resumed already.
+        return;
+      }
+      lane.held = null;
+      if (cancelled) {
+        task.notBefore = System.nanoTime();
+      }
+    }
+    schedule(lane);
+  }
+
+  // Guarded by this.
+  private void release(final Lane lane) {
+    lane.scheduled = false;
+    lanes.remove(lane.key, lane);
+  }
+
+  private synchronized boolean awaitIdle(final long timeoutNanos) throws InterruptedException {
+    final long deadline = System.nanoTime() + timeoutNanos;
+    while (queued > 0 || running > 0) {
+      final long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return false;
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    return true;
+  }
+
+  /**
+   * Stops the workers, interrupting those still sending.
+   *
+   * @return messages not sent.
+   */
+  private synchronized List<Task> stop() {
+    stopped = true;
+    for (Thread worker : workers) {
+      worker.interrupt();
+    }
+    final List<Task> tasks = new ArrayList<>();
+    for (Lane lane : lanes.values()) {
+      tasks.addAll(lane.tasks);
+      lane.clear();
+    }
+    lanes.clear();
+    for (Folder folder : active) {
+      folder.runs.clear();
+    }
+    active.clear();
+    parked.clear();
+    folders.clear();
+    ready = 0;
+    queued = 0;
+    notifyAll();
+    return tasks;
+  }
+
+  public synchronized int getQueueDepth() {
+    return queued;
+  }
+
+  /**
+   * What to do with a message when the dispatcher queue is full.
+   */
+  public enum OverflowPolicy {
+    DROP_NEWEST, DROP_OLDEST, CALLER_RUNS
+  }
+
+  // Guarded by the dispatcher.
+  private static final class Folder {
+
+    private final String name;
+    private long weight;
+    private final FolderMetrics metrics;
+    private final PriorityQueue<LaneRun> runs = new PriorityQueue<>();
+    private long pass;
+    // Messages queued or being sent.
+    private int tasks;
+
+    Folder(final String name, final int weight) {
+      this.name = name;
+      this.weight = Math.max(1, weight);
+      this.metrics = HubotMetrics.folder(name);
+    }
+  }
+
+  // Guarded by the dispatcher.
+  private static final class Lane {
+
+    private final String key;
+    private final String url;
+    // Any batch of the lane, they all go to the same url.
+    private final MessageBatch batch;
+    private final Deque<Task> tasks = new ArrayDeque<>();
+    private final int[] priorities = new int[Priority.values().length];
+    private boolean scheduled;
+    // Waiting for a worker, null while sending or held back by the rate limit.
+    private LaneRun waiting;
+    // Next message, while the lane is held back for it.
+    private Task held;
+
+    Lane(final String key, final MessageBatch batch) {
+      this.key = key;
+      this.url = batch.url();
+      this.batch = batch;
+    }
+
+    void add(final Task task) {
+      tasks.add(task);
+      priorities[task.priority.ordinal()]++;
+      task.folder.metrics.queued(1);
+    }
+
+    /**
+     * Puts a message back at the head of the lane, to be sent again before the others.
+     */
+    void push(final Task task) {
+      tasks.addFirst(task);
+      priorities[task.priority.ordinal()]++;
+      task.folder.metrics.queued(1);
+    }
+
+    void remove(final Task task) {
+      if (tasks.remove(task)) {
+        priorities[task.priority.ordinal()]--;
+        task.folder.metrics.queued(-1);
+      }
+    }
+
+    void clear() {
+      for (Task task : tasks) {
+        task.folder.metrics.queued(-1);
+      }
+      tasks.clear();
+      Arrays.fill(priorities, 0);
+    }
+
+    /**
+     * Priority of the most important message queued, the ones ahead of it must go first.
+     */
+    Priority priority() {
+      for (Priority priority : Priority.values()) {
+        if (priorities[priority.ordinal()] > 0) {
+          return priority;
+        }
+      }
+      return Priority.LOW;
+    }
+  }
+
+  /**
+   * A lane waiting for a worker, ordered within its folder by the deadline of its priority.
+   */
+  private static final class LaneRun implements Comparable<LaneRun> {
+
+    private final Lane lane;
+    private final Priority priority;
+    private final Folder folder;
+    private final long deadline;
+    private final long order;
+
+    LaneRun(final Lane lane, final Priority priority, final Folder folder, final long order) {
+      this.lane = lane;
+      this.priority = priority;
+      this.folder = folder;
+      this.deadline = priority.deadline(System.nanoTime());
+      this.order = order;
+    }
+
+    @Override
+    public int compareTo(final LaneRun other) {
+      final int byDeadline = Long.compare(deadline - other.deadline, 0);
+      return byDeadline != 0 ? byDeadline : Long.compare(order, other.order);
+    }
+  }
+
+  private static final class Task {
+
+    private final MessageBatch batch;
+    private final Priority priority;
+    private final long queuedAt;
+    // Guarded by the dispatcher.
+    private long notBefore;
+    private long order;
+    private Lane lane;
+    private Folder folder;
+    // Sent by one worker at a time.
+    private boolean started;
+    private InFlightCalls calls;
+    private Runnable wakeUp;
+
+    Task(final MessageBatch batch, final Priority priority, final long queuedAt) {
+      this.batch = batch;
+      this.priority = priority;
+      this.queuedAt = queuedAt;
+      this.notBefore = queuedAt;
+    }
+
+    /**
+     * Runs the listener when the calls of the batch are cancelled, until sent or dropped.
+     */
+    void watch(final Runnable listener) {
+      calls = batch.calls();
+      if (calls != null) {
+        wakeUp = listener;
+        calls.addListener(listener);
+      }
+    }
+
+    void unwatch() {
+      if (calls != null) {
+        calls.removeListener(wakeUp);
+      }
+    }
+
+    void drop() {
+      drop("Hubot: notification queue is full, message dropped.");
+    }
+
+    void drop(final String error) {
+      unwatch();
+      batch.drop(error);
+    }
+  }
+}
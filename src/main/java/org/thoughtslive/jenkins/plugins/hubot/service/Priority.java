@@ -0,0 +1,73 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import java.util.concurrent.TimeUnit;
+import org.thoughtslive.jenkins.plugins.hubot.api.Message;
+import org.thoughtslive.jenkins.plugins.hubot.config.notifications.Type;
+import org.thoughtslive.jenkins.plugins.hubot.util.Common.STEP;
+
+/**
+ * Priority of a queued message, most important first. Each class is given a slack, the time a
+ * message may wait behind more important ones before it goes first anyway, so that low priority
+ * messages are delayed during a storm but never starved.
+ *
+ * @author Naresh Rayapati
+ */
+enum Priority {
+
+  /**
+   * Approvals and breakages, which need a human.
+   */
+  HIGH(0),
+
+  /**
+   * Other results and step messages.
+   */
+  NORMAL(10),
+
+  /**
+   * Build started.
+   */
+  LOW(60);
+
+  private final long slackNanos;
+
+  Priority(final long slackSeconds) {
+    this.slackNanos = TimeUnit.SECONDS.toNanos(slackSeconds);
+  }
+
+  /**
+   * Latest time to send a message of this class queued at the given time.
+   */
+  long deadline(final long queuedNanos) {
+    return queuedNanos + slackNanos;
+  }
+
+  static Priority of(final Message message) {
+    if (STEP.APPROVE.name().equals(message.getStepName())) {
+      return HIGH;
+    }
+    final Type type;
+    try {
+      type = Type.valueOf(String.valueOf(message.getStatus()));
+    } catch (IllegalArgumentException e) {
+      // Free text status of hubotSend.
+      return NORMAL;
+    }
+    switch (type) {
+      case FAILURE:
+      case UNSTABLE:
+        return HIGH;
+      case STARTED:
+        return LOW;
+      default:
+        return NORMAL;
+    }
+  }
+
+  /**
+   * Returns the more important one of both.
+   */
+  Priority max(final Priority other) {
+    return other.ordinal() < ordinal() ? other : this;
+  }
+}
@@ -0,0 +1,109 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+/**
+ * Token bucket refilled at a fixed rate up to its burst capacity. Reservations may take the
+ * bucket into debt, later callers then wait for the debt to be refilled first. A bucket can be
+ * paused, as asked by a {@code Retry-After} header, in which case it isn't refilled until then.
+ *
+ * <p>All times are {@link System#nanoTime()} values.
+ *
+ * @author Naresh Rayapati
+ */
+final class TokenBucket {
+
+  private static final double NANOS_PER_MINUTE = 60e9;
+
+  // Tokens per nano second, 0 when unlimited.
+  private double rate;
+  private double capacity;
+  private double tokens;
+  private long refilledAt;
+  private long pausedUntil;
+
+  TokenBucket(final int perMinute, final int burst, final long now) {
+    this.refilledAt = now;
+    this.pausedUntil = now;
+    configure(perMinute, burst, now);
+    this.tokens = capacity;
+  }
+
+  /**
+   * Applies the given limit, tokens already available are kept up to the new capacity.
+   *
+   * @param perMinute messages per minute, unlimited when not positive.
+   * @param burst messages which may be sent at once.
+   */
+  synchronized void configure(final int perMinute, final int burst, final long now) {
+    final double newRate = Math.max(0, perMinute) / NANOS_PER_MINUTE;
+    final double newCapacity = Math.max(1, burst);
+    if (newRate != rate || newCapacity != capacity) {
+      refill(now);
+      tokens = rate == 0 ? newCapacity : Math.min(tokens, newCapacity);
+      rate = newRate;
+      capacity = newCapacity;
+    }
+  }
+
+  /**
+   * Takes tokens if they are available now.
+   *
+   * @return false when the bucket is empty or paused.
+   */
+  synchronized boolean tryAcquire(final int permits, final long now) {
+    refill(now);
+    if (now < pausedUntil) {
+      return false;
+    }
+    if (rate == 0) {
+      return true;
+    }
+    if (tokens < permits) {
+      return false;
+    }
+    tokens -= permits;
+    return true;
+  }
+
+  /**
+   * Gives back tokens taken by {@link #tryAcquire(int, long)}.
+   */
+  synchronized void release(final int permits) {
+    if (rate > 0) {
+      tokens = Math.min(capacity, tokens + permits);
+    }
+  }
+
+  /**
+   * Takes tokens, even when they aren't available yet.
+   *
+   * @return nano seconds to wait before the tokens are actually available.
+   */
+  synchronized long reserve(final int permits, final long now) {
+    refill(now);
+    long wait = Math.max(0, pausedUntil - now);
+    if (rate > 0) {
+      if (tokens < permits) {
+        wait += (long) Math.ceil((permits - tokens) / rate);
+      }
+      tokens -= permits;
+    }
+    return wait;
+  }
+
+  /**
+   * Stops refilling the bucket, and empties it, for the given time.
+   */
+  synchronized void pause(final long nanos, final long now) {
+    refill(now);
+    pausedUntil = Math.max(pausedUntil, now + nanos);
+    tokens = Math.min(tokens, 0);
+  }
+
+  private void refill(final long now) {
+    final long from = Math.max(refilledAt, pausedUntil);
+    if (rate > 0 && now > from) {
+      tokens = Math.min(capacity, tokens + (now - from) * rate);
+    }
+    refilledAt = Math.max(refilledAt, now);
+  }
+}
@@ -38,8 +38,8 @@ import org.thoughtslive.jenkins.plugins.hubot.config.notifications.Type;
 import org.thoughtslive.jenkins.plugins.hubot.util.Common;
 import org.thoughtslive.jenkins.plugins.hubot.util.Common.STEP;
 import org.thoughtslive.jenkins.plugins.hubot.util.HubotStepExecution;
-import com.fasterxml.jackson.databind.ObjectMapper; 
-import com.fasterxml.jackson.databind.ObjectWriter; 
+import org.thoughtslive.jenkins.plugins.hubot.util.Json;
+import org.thoughtslive.jenkins.plugins.hubot.util.RunContext;
 
 /**
  * Sends an approval message to Hubot.
@@ -137,7 +137,7 @@ public class ApproveStep extends BasicHubotStep {
       }
 
       // Query global sites.
-      for (HubotSite site : new GlobalConfig().getSites()) {
+      for (HubotSite site : GlobalConfig.get().getSites()) {
         hubotSites.add(new Option("Global - " + site.getName(), site.getName()));
       }
 
@@ -159,12 +159,31 @@ public class ApproveStep extends BasicHubotStep {
       this.step = step;
     }
 
+    /**
+     * Registers the input pause first, then prepares and sends the message in the background, so
+     * the CPS VM thread never waits for hubot.
+     */
     @Override
     public boolean start() throws Exception {
 
-      ResponseData<Void> response = verifyCommon(step);
+      final ResponseData<Void> response = verifyCommon(step);
       final String status = step.getStatus() == null ? Type.SUCCESS.name() : step.getStatus();
 
+      if (response != null) {
+        Common.logResponse(response, logger, failOnError);
+      }
+
+      final boolean done;
+      try {
+        done = startInput();
+      } catch (final Exception e) {
+        if (failOnError) {
+          throw new AbortException("Hubot: Unable to wait for input: " + e.getMessage());
+        } else {
+          return false;
+        }
+      }
+
       if (response == null) {
         if (this.site != null) {
           logger.println(
@@ -173,57 +192,78 @@ public class ApproveStep extends BasicHubotStep {
         } else {
           logger.println("Hubot: ROOM - " + room + " - Approval Message - " + step.getMessage());
         }
+        final FilePath ws = getContext().get(FilePath.class);
+        RunContext.of(run).getAsyncSends()
+            .send(hubotService, () -> prepareMessage(status, ws), failOnError, logger)
+            .thenAccept(this::onSent);
+      }
+      return done;
+    }
 
-        FilePath ws = getContext().get(FilePath.class);
-        final Map tokens = Common.expandMacros(step.getTokens(), run, ws, listener);
-        final String stepId = Util.fixEmpty(step.getId()) == null ? "Proceed" : step.getId().trim();
-
-        ObjectWriter ow = new ObjectMapper().writer().withDefaultPrettyPrinter();
-        final Message message = Message.builder().message(step.getMessage()).userName(buildUserName)
-            .userId(buildUserId)
-            .buildCause(buildCause)
-            .status(status)
-            .tokens(tokens)
-            .extraData(step.getExtraData())
-            .envVars(envVars).stepName(STEP.APPROVE.name()).ts(System.currentTimeMillis())
-            .id(stepId)
-            .submitter(step.getSubmitter())
-            .submitterParameter(step.getSubmitterParameter())
-            .parameters(ow.writeValueAsString(step.getParameters()))
-            .ok(step.getOk())
-            .build();
-
-        response = hubotService.sendMessage(message);
-
+    /**
+     * Starts the input step, which pauses the build until someone proceeds or aborts.
+     *
+     * @return true when the input completed right away.
+     */
+    protected boolean startInput() throws Exception {
+      final InputStep input = new InputStep(step.getMessage());
+      if (Util.fixEmpty(step.getId()) != null) {
+        input.setId(step.getId().trim());
+      } else {
+        input.setId("Proceed");
       }
+      input.setSubmitter(step.getSubmitter());
+      input.setOk(step.getOk());
+      input.setParameters(step.getParameters());
+      input.setSubmitterParameter(step.getSubmitterParameter());
 
-      Common.logResponse(response, logger, failOnError);
+      inputExecution = (InputStepExecution) input.start(getContext());
+      return inputExecution.start();
+    }
 
-      try {
-        final InputStep input = new InputStep(step.getMessage());
-        if (Util.fixEmpty(step.getId()) != null) {
-          input.setId(step.getId().trim());
-        } else {
-          input.setId("Proceed");
-        }
-        input.setSubmitter(step.getSubmitter());
-        input.setOk(step.getOk());
-        input.setParameters(step.getParameters());
-        input.setSubmitterParameter(step.getSubmitterParameter());
+    /**
+     * Prepares the message, runs in the background.
+     */
+    private Message prepareMessage(final String status, final FilePath ws) throws Exception {
+      final Map tokens = Common.expandMacros(step.getTokens(), run, ws, listener);
+      final String stepId = Util.fixEmpty(step.getId()) == null ? "Proceed" : step.getId().trim();
+
+      return Message.builder().message(step.getMessage()).userName(buildUserName)
+          .userId(buildUserId)
+          .buildCause(buildCause)
+          .status(status)
+          .tokens(tokens)
+          .extraData(step.getExtraData())
+          .envVars(envVarsFilter.apply(envVars)).stepName(STEP.APPROVE.name())
+          .ts(System.currentTimeMillis())
+          .id(stepId)
+          .submitter(step.getSubmitter())
+          .submitterParameter(step.getSubmitterParameter())
+          .parameters(Json.WRITER.writeValueAsString(step.getParameters()))
+          .ok(step.getOk())
+          .build();
+    }
 
-        final InputStepExecution inputExecution = (InputStepExecution) input.start(getContext());
-        return inputExecution.start();
-      } catch (final Exception e) {
-        if (failOnError) {
-          throw new AbortException("Error while sending message: " + e.getMessage());
-        } else {
-          return false;
+    /**
+     * Logs the outcome of the message, a failure aborts the pending input when failOnError.
+     */
+    private void onSent(final ResponseData<Void> response) {
+      try {
+        Common.logResponse(response, logger, failOnError);
+      } catch (AbortException e) {
+        try {
+          stop(e);
+        } catch (Exception ex) {
+          logger.println("Hubot: Unable to abort input: " + ex.getMessage());
         }
       }
     }
 
     @Override
     public void stop(Throwable cause) throws Exception {
+      if (calls != null) {
+        calls.cancel();
+      }
       if (inputExecution != null) {
         inputExecution.stop(cause);
       }
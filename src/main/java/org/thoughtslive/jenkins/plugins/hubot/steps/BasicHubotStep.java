@@ -56,4 +56,14 @@ public abstract class BasicHubotStep extends Step implements Serializable {
   @Setter
   private String tokens;
 
+  @Getter
+  @DataBoundSetter
+  @Setter
+  private String envVarsInclude;
+
+  @Getter
+  @DataBoundSetter
+  @Setter
+  private String envVarsExclude;
+
 }
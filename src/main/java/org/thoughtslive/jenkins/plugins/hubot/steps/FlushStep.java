@@ -0,0 +1,102 @@
+package org.thoughtslive.jenkins.plugins.hubot.steps;
+
+import com.google.common.collect.ImmutableSet;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import lombok.Setter;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.jenkinsci.plugins.workflow.steps.SynchronousNonBlockingStepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.thoughtslive.jenkins.plugins.hubot.service.AsyncSends;
+import org.thoughtslive.jenkins.plugins.hubot.util.Common;
+import org.thoughtslive.jenkins.plugins.hubot.util.RunContext;
+
+/**
+ * Waits for the messages of the run sent with {@code hubotSend async: true}.
+ *
+ * @author Naresh Rayapati.
+ */
+public class FlushStep extends Step implements Serializable {
+
+  private static final long serialVersionUID = -3390447245180529154L;
+
+  public static final int DEFAULT_TIMEOUT_SECONDS = 60;
+
+  @Getter
+  @DataBoundSetter
+  @Setter
+  private int timeout = DEFAULT_TIMEOUT_SECONDS;
+
+  @Getter
+  @DataBoundSetter
+  @Setter
+  private String failOnError;
+
+  @DataBoundConstructor
+  public FlushStep() {
+  }
+
+  @Override
+  public StepExecution start(StepContext context) throws Exception {
+    return new FlushStepExecution(this, context);
+  }
+
+  @Extension
+  public static class DescriptorImpl extends StepDescriptor {
+
+    @Override
+    public String getFunctionName() {
+      return "hubotFlush";
+    }
+
+    @Override
+    public String getDisplayName() {
+      return "Hubot: Wait for messages sent in the background";
+    }
+
+    @Override
+    public Set<? extends Class<?>> getRequiredContext() {
+      return ImmutableSet.of(Run.class, TaskListener.class);
+    }
+  }
+
+  public static class FlushStepExecution extends SynchronousNonBlockingStepExecution<Boolean> {
+
+    private static final long serialVersionUID = 4468291839712095318L;
+
+    private final FlushStep step;
+
+    protected FlushStepExecution(final FlushStep step, final StepContext context)
+        throws IOException, InterruptedException {
+      super(context);
+      this.step = step;
+    }
+
+    @Override
+    protected Boolean run() throws Exception {
+      final Run<?, ?> run = getContext().get(Run.class);
+      final TaskListener listener = getContext().get(TaskListener.class);
+      final AsyncSends sends = RunContext.of(run).getAsyncSends();
+      listener.getLogger()
+          .println("Hubot: Waiting for " + sends.size() + " message(s) sent in the background.");
+
+      final AsyncSends.Flushed flushed = sends
+          .flush(TimeUnit.SECONDS.toMillis(Math.max(1, step.getTimeout())));
+      final boolean failOnError = Util.fixEmpty(step.getFailOnError()) != null
+          ? Boolean.parseBoolean(step.getFailOnError()) : flushed.isFailOnError();
+      return Common.logResponse(flushed.getResponse(), listener.getLogger(), failOnError)
+          .isSuccessful();
+    }
+  }
+}
@@ -16,20 +16,26 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import lombok.Getter;
+import lombok.Setter;
 import org.jenkinsci.plugins.workflow.steps.StepContext;
 import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
 import org.jenkinsci.plugins.workflow.steps.StepExecution;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.thoughtslive.jenkins.plugins.hubot.api.Message;
 import org.thoughtslive.jenkins.plugins.hubot.api.ResponseData;
 import org.thoughtslive.jenkins.plugins.hubot.config.GlobalConfig;
 import org.thoughtslive.jenkins.plugins.hubot.config.HubotFolderProperty;
 import org.thoughtslive.jenkins.plugins.hubot.config.HubotSite;
 import org.thoughtslive.jenkins.plugins.hubot.config.notifications.Type;
+import org.thoughtslive.jenkins.plugins.hubot.service.AsyncSends;
 import org.thoughtslive.jenkins.plugins.hubot.util.Common;
 import org.thoughtslive.jenkins.plugins.hubot.util.Common.STEP;
 import org.thoughtslive.jenkins.plugins.hubot.util.HubotAbstractSynchronousNonBlockingStepExecution;
+import org.thoughtslive.jenkins.plugins.hubot.util.RunContext;
 
 /**
  * Sends a message to hubot
@@ -40,6 +46,11 @@ public class SendStep extends BasicHubotStep {
 
   private static final long serialVersionUID = 5310947910434533239L;
 
+  @Getter
+  @DataBoundSetter
+  @Setter
+  private boolean async;
+
   @DataBoundConstructor
   public SendStep(final String message) {
     this.message = message;
@@ -107,7 +118,7 @@ public class SendStep extends BasicHubotStep {
       }
 
       // Query global sites.
-      for (HubotSite site : new GlobalConfig().getSites()) {
+      for (HubotSite site : GlobalConfig.get().getSites()) {
         hubotSites.add(new Option("Global - " + site.getName(), site.getName()));
       }
 
@@ -147,14 +158,24 @@ public class SendStep extends BasicHubotStep {
         final Map tokens = Common.expandMacros(step.getTokens(), run, ws, listener);
 
         final Message message = Message.builder().message(step.getMessage()).userName(buildUserName)
-            .userId(buildUserId).envVars(envVars)
+            .userId(buildUserId).envVars(envVarsFilter.apply(envVars))
             .buildCause(buildCause)
             .status(status)
             .tokens(tokens)
             .extraData(step.getExtraData()).stepName(STEP.SEND.name())
             .ts(System.currentTimeMillis())
             .build();
-        response = hubotService.sendMessage(message);
+        final AsyncSends sends = RunContext.of(run).getAsyncSends();
+        if (step.isAsync()) {
+          sends.send(hubotService, message, failOnError, logger);
+          return true;
+        }
+        // Sent in order with the notifications and async messages queued to the same room.
+        try {
+          response = sends.sendNow(hubotService, message).get();
+        } catch (ExecutionException e) {
+          response = Common.buildErrorResponse(e);
+        }
       }
 
       return Common.logResponse(response, logger, failOnError).isSuccessful();
@@ -10,14 +10,31 @@ import hudson.model.Cause.UpstreamCause;
 import hudson.model.Cause.UserIdCause;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.apache.log4j.Logger;
 import org.jenkinsci.plugins.tokenmacro.TokenMacro;
 import org.thoughtslive.jenkins.plugins.hubot.api.ResponseData;
+import org.thoughtslive.jenkins.plugins.hubot.config.GlobalConfig;
 import retrofit2.Response;
 
 /**
@@ -29,6 +46,21 @@ public class Common {
 
   private static final Logger LOGGER = Logger.getLogger(Common.class.getName());
 
+  private static final int TOKEN_THREADS = 8;
+
+  /**
+   * Tokens waiting for a thread, more are not expanded, they would time out while waiting anyway.
+   */
+  private static final int TOKEN_QUEUE_SIZE = 256;
+
+  private static final ThreadPoolExecutor TOKEN_EXECUTOR = new ThreadPoolExecutor(TOKEN_THREADS,
+      TOKEN_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(TOKEN_QUEUE_SIZE),
+      new NamingThreadFactory(new DaemonThreadFactory(), "Hubot token expansion"));
+
+  static {
+    TOKEN_EXECUTOR.allowCoreThreadTimeOut(true);
+  }
+
   /**
    * Attaches the "/" at end of given url.
    *
@@ -110,6 +142,19 @@ public class Common {
     return resData;
   }
 
+  /**
+   * Whether a failed response is worth sending again, connection errors, timeouts, rate limiting
+   * and server errors are.
+   *
+   * @param response response of a send.
+   * @return true when the message may be delivered by sending it again.
+   */
+  public static boolean isRetryable(final ResponseData<?> response) {
+    final int code = response.getCode();
+    return !response.isSuccessful()
+        && (code == -1 || code == 408 || code == 429 || code >= 500);
+  }
+
   /**
    * Returns actual Cause from the given exception.
    *
@@ -196,24 +241,107 @@ public class Common {
   /**
    * Expands given macro, see Token Marco plugin.
    */
-  @SuppressFBWarnings
   public static Map expandMacros(String tokens, Run<?, ?> run, FilePath ws, TaskListener listener) {
+    return expandMacros(tokens, run, ws, listener, new ConcurrentHashMap<>());
+  }
+
+  /**
+   * Expands given macros in parallel, each of them waited for at most the token timeout of the
+   * global configuration once it runs, and as long for a thread before, those timed out or not
+   * found are null.
+   *
+   * @param expanded expansions already started for the same notification, keyed by token and
+   *     workspace, new ones are added.
+   */
+  @SuppressFBWarnings
+  public static Map expandMacros(String tokens, Run<?, ?> run, FilePath ws, TaskListener listener,
+      final ConcurrentMap<String, Future<String>> expanded) {
     Map tokenMap = new HashMap<String, String>();
     if (Util.fixEmpty(tokens) != null) {
+      final Map<String, Future<String>> futures = new LinkedHashMap<>();
       for (String token : tokens.split(",")) {
-        token = token.trim();
+        final String name = token.trim();
+        futures.put(name, expanded.computeIfAbsent(
+            name + '\n' + (ws == null ? "" : ws.getRemote()),
+            key -> expand(name, run, ws, listener)));
+      }
+      final GlobalConfig config = GlobalConfig.get();
+      final long timeout = config == null ? GlobalConfig.DEFAULT_TOKEN_TIMEOUT_SECONDS
+          : config.getTokenTimeoutSeconds();
+      for (Map.Entry<String, Future<String>> entry : futures.entrySet()) {
         String tokenExpand = null;
         try {
-          tokenExpand = TokenMacro.expand(run, ws, listener, "${" + token + "}");
+          tokenExpand = entry.getValue() instanceof Token
+              ? ((Token) entry.getValue()).await(entry.getKey(), timeout)
+              : entry.getValue().get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
         } catch (Exception e) {
-          LOGGER.info("Hubot: ${" + token + "} not found.");
+          LOGGER.info("Hubot: ${" + entry.getKey() + "} not found.");
         }
-        tokenMap.put(token, tokenExpand);
+        tokenMap.put(entry.getKey(), tokenExpand);
       }
     }
     return tokenMap;
   }
 
+  private static Future<String> expand(final String name, final Run<?, ?> run, final FilePath ws,
+      final TaskListener listener) {
+    final Token token = new Token(() -> TokenMacro.expand(run, ws, listener, "${" + name + "}"));
+    try {
+      TOKEN_EXECUTOR.execute(token);
+      return token;
+    } catch (RejectedExecutionException e) {
+      LOGGER.info("Hubot: ${" + name + "} not expanded, too many tokens waiting.");
+      return CompletableFuture.completedFuture(null);
+    }
+  }
+
+  /**
+   * Expansion of a token, timed from when a thread picks it up rather than from when it was
+   * submitted. Shared by the rooms of a notification, so it is never cancelled by one of them.
+   */
+  private static final class Token extends FutureTask<String> {
+
+    private final long queued = System.nanoTime();
+    private final CountDownLatch running = new CountDownLatch(1);
+    private volatile long started;
+
+    Token(final Callable<String> expansion) {
+      super(expansion);
+    }
+
+    @Override
+    public void run() {
+      started = System.nanoTime();
+      running.countDown();
+      super.run();
+    }
+
+    /**
+     * Waits at most the timeout since it was submitted for a thread, and then at most the timeout
+     * since it started for the expansion.
+     *
+     * @return expanded token, null when it did not run or finish in time.
+     */
+    String await(final String name, final long timeoutSeconds)
+        throws InterruptedException, ExecutionException {
+      final long timeout = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+      if (!running.await(queued + timeout - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+        LOGGER.info("Hubot: ${" + name + "} not expanded, waited " + timeoutSeconds
+            + "s for a thread.");
+        return null;
+      }
+      try {
+        return get(started + timeout - System.nanoTime(), TimeUnit.NANOSECONDS);
+      } catch (TimeoutException e) {
+        LOGGER.info("Hubot: ${" + name + "} timed out after " + timeoutSeconds + "s.");
+        return null;
+      }
+    }
+  }
+
   /**
    * Log code and error message if any.
    *
@@ -0,0 +1,202 @@
+package org.thoughtslive.jenkins.plugins.hubot.util;
+
+import hudson.Util;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import org.thoughtslive.jenkins.plugins.hubot.config.GlobalConfig;
+import org.thoughtslive.jenkins.plugins.hubot.config.HubotSite;
+
+/**
+ * Selects which environment variables are sent to hubot, using comma separated include and
+ * exclude patterns where {@code *} matches any characters, Ex: {@code BUILD_*,JOB_*,GIT_*}.
+ *
+ * <p>Filters are compiled once per pattern pair, the most recently used ones are kept, and applied
+ * as a read only view over the environment variables, the map is never copied.
+ *
+ * @author Naresh Rayapati
+ */
+public final class EnvVarsFilter implements Serializable {
+
+  private static final long serialVersionUID = 3571626532745981902L;
+
+  /**
+   * Sends every environment variable.
+   */
+  public static final EnvVarsFilter ALL = new EnvVarsFilter(null, null);
+
+  private static final int MAX_COMPILED = 64;
+
+  // Guarded by COMPILED.
+  private static final Map<String, EnvVarsFilter> COMPILED =
+      new LinkedHashMap<String, EnvVarsFilter>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, EnvVarsFilter> eldest) {
+          return size() > MAX_COMPILED;
+        }
+      };
+
+  private final Pattern include;
+
+  private final Pattern exclude;
+
+  private EnvVarsFilter(final Pattern include, final Pattern exclude) {
+    this.include = include;
+    this.exclude = exclude;
+  }
+
+  /**
+   * Returns the compiled filter for the given patterns.
+   *
+   * @param include comma separated patterns to send, all when empty.
+   * @param exclude comma separated patterns not to send, none when empty.
+   * @return filter, {@link #ALL} when both are empty.
+   */
+  public static EnvVarsFilter of(final String include, final String exclude) {
+    final String includes = Util.fixEmptyAndTrim(include);
+    final String excludes = Util.fixEmptyAndTrim(exclude);
+    if (includes == null && excludes == null) {
+      return ALL;
+    }
+    synchronized (COMPILED) {
+      return COMPILED.computeIfAbsent(includes + "\n" + excludes,
+          key -> new EnvVarsFilter(compile(includes), compile(excludes)));
+    }
+  }
+
+  /**
+   * Returns the filter from the most specific level with any pattern: the step, then the site,
+   * then the global configuration.
+   *
+   * @param include step include patterns.
+   * @param exclude step exclude patterns.
+   * @param site effective site, may be null.
+   * @return filter to apply.
+   */
+  public static EnvVarsFilter resolve(final String include, final String exclude,
+      final HubotSite site) {
+    if (Util.fixEmptyAndTrim(include) != null || Util.fixEmptyAndTrim(exclude) != null) {
+      return of(include, exclude);
+    }
+    if (site != null && (Util.fixEmptyAndTrim(site.getEnvVarsInclude()) != null
+        || Util.fixEmptyAndTrim(site.getEnvVarsExclude()) != null)) {
+      return of(site.getEnvVarsInclude(), site.getEnvVarsExclude());
+    }
+    final GlobalConfig globalConfig = GlobalConfig.get();
+    if (globalConfig != null) {
+      return of(globalConfig.getEnvVarsInclude(), globalConfig.getEnvVarsExclude());
+    }
+    return ALL;
+  }
+
+  public boolean accepts(final String name) {
+    return (include == null || include.matcher(name).matches())
+        && (exclude == null || !exclude.matcher(name).matches());
+  }
+
+  /**
+   * Returns a read only view with only the accepted environment variables.
+   *
+   * @param envVars environment variables, may be null.
+   * @return view backed by the given map.
+   */
+  public Map<String, String> apply(final Map<String, String> envVars) {
+    if (envVars == null || (include == null && exclude == null)) {
+      return envVars;
+    }
+    return new FilteredMap(envVars, this);
+  }
+
+  private static Pattern compile(final String patterns) {
+    if (patterns == null) {
+      return null;
+    }
+    final StringBuilder regex = new StringBuilder();
+    for (String pattern : patterns.split(",")) {
+      pattern = pattern.trim();
+      if (pattern.isEmpty()) {
+        continue;
+      }
+      if (regex.length() > 0) {
+        regex.append('|');
+      }
+      for (String part : pattern.split("\\*", -1)) {
+        regex.append(Pattern.quote(part)).append(".*");
+      }
+      regex.setLength(regex.length() - 2);
+    }
+    // Environment variable names are case insensitive, see EnvVars.
+    return regex.length() == 0 ? null
+        : Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+  }
+
+  /**
+   * Read only view of the accepted environment variables, they are selected once on first use.
+   */
+  private static final class FilteredMap extends AbstractMap<String, String>
+      implements Serializable {
+
+    private static final long serialVersionUID = -2307484383478264812L;
+
+    private final Map<String, String> envVars;
+
+    private final EnvVarsFilter filter;
+
+    private transient volatile List<Entry<String, String>> accepted;
+
+    FilteredMap(final Map<String, String> envVars, final EnvVarsFilter filter) {
+      this.envVars = envVars;
+      this.filter = filter;
+    }
+
+    @Override
+    public String get(final Object key) {
+      return key instanceof String && filter.accepts((String) key) ? envVars.get(key) : null;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+      return key instanceof String && filter.accepts((String) key) && envVars.containsKey(key);
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+      return new AbstractSet<Entry<String, String>>() {
+        @Override
+        public Iterator<Entry<String, String>> iterator() {
+          return accepted().iterator();
+        }
+
+        @Override
+        public int size() {
+          return accepted().size();
+        }
+      };
+    }
+
+    private List<Entry<String, String>> accepted() {
+      List<Entry<String, String>> entries = accepted;
+      if (entries == null) {
+        entries = new ArrayList<>();
+        for (Entry<String, String> entry : envVars.entrySet()) {
+          if (filter.accepts(entry.getKey())) {
+            entries.add(new SimpleImmutableEntry<>(entry));
+          }
+        }
+        entries = Collections.unmodifiableList(entries);
+        accepted = entries;
+      }
+      return entries;
+    }
+  }
+}
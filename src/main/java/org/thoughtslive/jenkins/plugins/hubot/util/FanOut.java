@@ -0,0 +1,52 @@
+package org.thoughtslive.jenkins.plugins.hubot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs independent tasks concurrently on virtual threads, with a concurrency cap per call and one
+ * deadline for all of them.
+ *
+ * @author Naresh Rayapati
+ */
+public final class FanOut {
+
+  private static final ExecutorService EXECUTOR = Executors
+      .newThreadPerTaskExecutor(Thread.ofVirtual().name("Hubot fan-out ", 0).factory());
+
+  private FanOut() {
+  }
+
+  /**
+   * Runs the tasks and waits until all of them complete or the deadline elapses, tasks still
+   * running then are cancelled.
+   *
+   * @param tasks tasks to run.
+   * @param maxConcurrency maximum number of tasks running at the same time.
+   * @param timeoutMillis deadline for all tasks together.
+   * @return futures in the order of the tasks, all of them done.
+   * @throws InterruptedException when interrupted while waiting, unfinished tasks are cancelled.
+   */
+  public static <T> List<Future<T>> invokeAll(final List<? extends Callable<T>> tasks,
+      final int maxConcurrency, final long timeoutMillis) throws InterruptedException {
+    final Semaphore permits = new Semaphore(Math.max(1, maxConcurrency));
+    final List<Callable<T>> limited = new ArrayList<>(tasks.size());
+    for (final Callable<T> task : tasks) {
+      limited.add(() -> {
+        permits.acquire();
+        try {
+          return task.call();
+        } finally {
+          permits.release();
+        }
+      });
+    }
+    return EXECUTOR.invokeAll(limited, Math.max(1, timeoutMillis), TimeUnit.MILLISECONDS);
+  }
+}
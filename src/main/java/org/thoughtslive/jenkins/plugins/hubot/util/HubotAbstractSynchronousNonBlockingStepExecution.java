@@ -16,6 +16,7 @@ import org.jenkinsci.plugins.workflow.steps.SynchronousNonBlockingStepExecution;
 import org.thoughtslive.jenkins.plugins.hubot.api.ResponseData;
 import org.thoughtslive.jenkins.plugins.hubot.config.HubotSite;
 import org.thoughtslive.jenkins.plugins.hubot.service.HubotService;
+import org.thoughtslive.jenkins.plugins.hubot.service.InFlightCalls;
 import org.thoughtslive.jenkins.plugins.hubot.steps.BasicHubotStep;
 
 /**
@@ -39,8 +40,10 @@ public abstract class HubotAbstractSynchronousNonBlockingStepExecution<T>
   protected transient String buildUserId = null;
   protected transient EnvVars envVars;
   protected transient HubotSite site = null;
+  protected transient EnvVarsFilter envVarsFilter = EnvVarsFilter.ALL;
   protected transient Run<?, ?> run;
   protected transient TaskListener listener;
+  protected transient InFlightCalls calls;
   private String failOnErrorStr = null;
   private String url = null;
 
@@ -127,16 +130,30 @@ public abstract class HubotAbstractSynchronousNonBlockingStepExecution<T>
       return buildErrorResponse(new RuntimeException(errorMessage));
     }
 
+    calls = RunContext.of(run).getCalls().child();
     setHubotService(site, mainURL, room);
+    envVarsFilter = EnvVarsFilter.resolve(step.getEnvVarsInclude(), step.getEnvVarsExclude(), site);
 
-    buildUserName = Common.prepareBuildUserName(run.getCauses(), envVars);
-    buildUserId = Common.prepareBuildUserId(run.getCauses(), envVars);
-    buildCause = Common.prepareBuildCause(run.getCauses());
+    final RunContext context = RunContext.of(run);
+    buildUserName = context.getBuildUserName(envVars);
+    buildUserId = context.getBuildUserId();
+    buildCause = context.getBuildCause();
 
     return null;
 
   }
 
+  /**
+   * Cancels the calls to hubot in flight, then interrupts the step.
+   */
+  @Override
+  public void stop(Throwable cause) throws Exception {
+    if (calls != null) {
+      calls.cancel();
+    }
+    super.stop(cause);
+  }
+
   @VisibleForTesting
   public void setHubotService(final HubotService service) {
     this.hubotService = service;
@@ -147,7 +164,7 @@ public abstract class HubotAbstractSynchronousNonBlockingStepExecution<T>
       site = HubotSite.builder().url(url).room(room).build();
     }
     if (this.hubotService == null) {
-      this.hubotService = new HubotService(site);
+      this.hubotService = new HubotService(site, calls);
     }
   }
 }
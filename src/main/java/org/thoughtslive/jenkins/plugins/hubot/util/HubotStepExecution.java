@@ -16,6 +16,7 @@ import org.jenkinsci.plugins.workflow.steps.StepExecution;
 import org.thoughtslive.jenkins.plugins.hubot.api.ResponseData;
 import org.thoughtslive.jenkins.plugins.hubot.config.HubotSite;
 import org.thoughtslive.jenkins.plugins.hubot.service.HubotService;
+import org.thoughtslive.jenkins.plugins.hubot.service.InFlightCalls;
 import org.thoughtslive.jenkins.plugins.hubot.steps.BasicHubotStep;
 
 /**
@@ -38,8 +39,10 @@ public abstract class HubotStepExecution<T> extends StepExecution {
   protected transient String buildUserId = null;
   protected transient EnvVars envVars;
   protected transient HubotSite site = null;
+  protected transient EnvVarsFilter envVarsFilter = EnvVarsFilter.ALL;
   protected transient Run<?, ?> run;
   protected transient TaskListener listener;
+  protected transient InFlightCalls calls;
   private String failOnErrorStr = null;
   private String url = null;
 
@@ -125,11 +128,14 @@ public abstract class HubotStepExecution<T> extends StepExecution {
       return buildErrorResponse(new RuntimeException(errorMessage));
     }
 
+    calls = RunContext.of(run).getCalls().child();
     setHubotService(site, mainURL, room);
+    envVarsFilter = EnvVarsFilter.resolve(step.getEnvVarsInclude(), step.getEnvVarsExclude(), site);
 
-    buildUserName = Common.prepareBuildUserName(run.getCauses(), envVars);
-    buildUserId = Common.prepareBuildUserId(run.getCauses(), envVars);
-    buildCause = Common.prepareBuildCause(run.getCauses());
+    final RunContext context = RunContext.of(run);
+    buildUserName = context.getBuildUserName(envVars);
+    buildUserId = context.getBuildUserId();
+    buildCause = context.getBuildCause();
     return null;
 
   }
@@ -144,7 +150,7 @@ public abstract class HubotStepExecution<T> extends StepExecution {
       site = HubotSite.builder().url(url).room(room).build();
     }
     if (this.hubotService == null) {
-      this.hubotService = new HubotService(site);
+      this.hubotService = new HubotService(site, calls);
     }
   }
 }
@@ -0,0 +1,32 @@
+package org.thoughtslive.jenkins.plugins.hubot.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.util.List;
+import org.thoughtslive.jenkins.plugins.hubot.api.Message;
+
+/**
+ * Shared, pre-configured Jackson mapper and writers. Writers are immutable and thread safe, and
+ * reusing them keeps serializers cached instead of resolving them per message.
+ *
+ * @author Naresh Rayapati
+ */
+public final class Json {
+
+  public static final ObjectMapper MAPPER = new ObjectMapper()
+      // Bodies are streamed into OkHttp's sink, which OkHttp closes itself.
+      .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+  public static final ObjectWriter WRITER = MAPPER.writer();
+
+  public static final ObjectWriter MESSAGE_WRITER = MAPPER.writerFor(Message.class);
+
+  public static final ObjectWriter MESSAGES_WRITER = MAPPER
+      .writerFor(new TypeReference<List<Message>>() {
+      });
+
+  private Json() {
+  }
+}
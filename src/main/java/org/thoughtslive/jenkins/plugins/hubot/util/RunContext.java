@@ -0,0 +1,160 @@
+package org.thoughtslive.jenkins.plugins.hubot.util;
+
+import hudson.EnvVars;
+import hudson.Util;
+import hudson.model.Cause;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import org.thoughtslive.jenkins.plugins.hubot.service.AsyncSends;
+import org.thoughtslive.jenkins.plugins.hubot.service.InFlightCalls;
+
+/**
+ * Values of one run needed by every message, computed once on first use and shared by the build
+ * listener and the steps of the run. {@link Run#getEnvironment(TaskListener)} runs every
+ * environment contributor, so it is resolved once per build event instead of for every room.
+ *
+ * @author Naresh Rayapati
+ */
+public final class RunContext {
+
+  private static final Map<Run<?, ?>, RunContext> CONTEXTS = new ConcurrentHashMap<>();
+
+  private final Run<?, ?> run;
+
+  private EnvVars environment;
+
+  private final ConcurrentMap<String, Future<String>> expandedTokens = new ConcurrentHashMap<>();
+
+  private final AsyncSends asyncSends;
+
+  private final InFlightCalls calls = new InFlightCalls();
+
+  private boolean causesResolved;
+
+  private String buildCause;
+
+  private String buildUserName;
+
+  private String buildUserId;
+
+  private RunContext(final Run<?, ?> run) {
+    this.run = run;
+    this.asyncSends =
+        new AsyncSends(run.getParent() == null ? null : run.getParent().getFullName());
+  }
+
+  /**
+   * Returns the context of the given run, created on first use.
+   */
+  public static RunContext of(final Run<?, ?> run) {
+    return CONTEXTS.computeIfAbsent(run, RunContext::new);
+  }
+
+  /**
+   * Drops the context of a run which won't send messages anymore, once it is finalized.
+   */
+  public static void remove(final Run<?, ?> run) {
+    CONTEXTS.remove(run);
+  }
+
+  /**
+   * Returns the environment of the run, resolved once until it is invalidated.
+   *
+   * @param listener listener of the run, used by the environment contributors.
+   * @return environment, callers must not modify it.
+   */
+  public synchronized EnvVars getEnvironment(final TaskListener listener)
+      throws IOException, InterruptedException {
+    if (environment == null) {
+      environment = run.getEnvironment(listener);
+    }
+    return environment;
+  }
+
+  /**
+   * Forgets the environment and the expanded tokens of the run, once contributors and macros may
+   * return something else, like after the build. Nothing happens when the run has no context yet.
+   */
+  public static void invalidateEnvironment(final Run<?, ?> run) {
+    final RunContext context = CONTEXTS.get(run);
+    if (context != null) {
+      synchronized (context) {
+        context.environment = null;
+      }
+      context.expandedTokens.clear();
+    }
+  }
+
+  /**
+   * Returns the token expansions of the current build event, shared by every room.
+   */
+  public ConcurrentMap<String, Future<String>> getExpandedTokens() {
+    return expandedTokens;
+  }
+
+  /**
+   * Returns the messages of the run sent in the background.
+   */
+  public AsyncSends getAsyncSends() {
+    return asyncSends;
+  }
+
+  /**
+   * Returns the calls to hubot in flight for the run, steps track theirs in a child scope.
+   */
+  public InFlightCalls getCalls() {
+    return calls;
+  }
+
+  /**
+   * Cancels the calls to hubot of an aborted run, including queued async messages. Nothing
+   * happens when the run has no context.
+   */
+  public static void cancelCalls(final Run<?, ?> run) {
+    final RunContext context = CONTEXTS.get(run);
+    if (context != null) {
+      context.calls.cancel();
+    }
+  }
+
+  public synchronized String getBuildCause() {
+    resolveCauses();
+    return buildCause;
+  }
+
+  /**
+   * Returns the build user name, the {@code CHANGE_AUTHOR} of the given environment wins over the
+   * user of the build causes, as in {@link Common#prepareBuildUserName(List, EnvVars)}.
+   */
+  public String getBuildUserName(final EnvVars envVars) {
+    final String changeAuthor = envVars.get("CHANGE_AUTHOR");
+    if (Util.fixEmpty(changeAuthor) != null) {
+      return changeAuthor;
+    }
+    synchronized (this) {
+      resolveCauses();
+      return buildUserName;
+    }
+  }
+
+  public synchronized String getBuildUserId() {
+    resolveCauses();
+    return buildUserId;
+  }
+
+  private void resolveCauses() {
+    if (!causesResolved) {
+      final List<Cause> causes = run.getCauses();
+      buildCause = Common.prepareBuildCause(causes);
+      buildUserName = Common.prepareBuildUserName(causes, new EnvVars());
+      buildUserId = Common.prepareBuildUserId(causes, new EnvVars());
+      causesResolved = true;
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package org.thoughtslive.jenkins.plugins.hubot.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs every JMH benchmark of the plugin, only with the {@code benchmark} profile:
+ * {@code mvn test -Pbenchmark}. Results are written to {@code target/jmh-report.json}.
+ *
+ * @author Naresh Rayapati
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class BenchmarkRunner {
+
+  @Test
+  public void runBenchmarks() throws Exception {
+    final Options options = new OptionsBuilder()
+        .include("org\\.thoughtslive\\.jenkins\\.plugins\\.hubot\\..*Benchmark\\..*")
+        .mode(Mode.AverageTime)
+        .timeUnit(TimeUnit.MICROSECONDS)
+        .warmupIterations(3)
+        .warmupTime(TimeValue.seconds(1))
+        .measurementIterations(5)
+        .measurementTime(TimeValue.seconds(1))
+        .forks(1)
+        .addProfiler(GCProfiler.class)
+        .shouldFailOnError(true)
+        .resultFormat(ResultFormatType.JSON)
+        .result(System.getProperty("jmh.result", "target/jmh-report.json"))
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,74 @@
+package org.thoughtslive.jenkins.plugins.hubot.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test cases for SiteCache class.
+ *
+ * @author Naresh Rayapati
+ */
+public class SiteCacheTest {
+
+  @AfterEach
+  public void tearDown() {
+    SiteCache.invalidateAll();
+  }
+
+  @Test
+  public void testResolvesOncePerItemAndSiteName() throws Exception {
+    final AtomicInteger calls = new AtomicInteger();
+    final HubotSite site = HubotSite.builder().name("site").build();
+
+    for (int i = 0; i < 3; i++) {
+      assertThat(SiteCache.get("team/job", "SITE", () -> {
+        calls.incrementAndGet();
+        return site;
+      })).isSameAs(site);
+    }
+    assertThat(SiteCache.get("team/job", "site", () -> null)).isSameAs(site);
+    assertThat(SiteCache.get("team/job", null, () -> null)).isNull();
+
+    assertThat(calls.get()).isEqualTo(1);
+    assertThat(SiteCache.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void testInvalidateFolderDropsDescendantsOnly() throws Exception {
+    final HubotSite site = HubotSite.builder().name("site").build();
+    SiteCache.get("team/job", null, () -> site);
+    SiteCache.get("team/sub/job", null, () -> site);
+    SiteCache.get("team-other/job", null, () -> site);
+
+    SiteCache.invalidate("team");
+
+    assertThat(SiteCache.size()).isEqualTo(1);
+    assertThat(SiteCache.get("team-other/job", null, () -> null)).isSameAs(site);
+  }
+
+  @Test
+  public void testResolvedDuringInvalidationIsNotCached() throws Exception {
+    final HubotSite site = HubotSite.builder().name("site").build();
+    assertThat(SiteCache.get("job", null, () -> {
+      SiteCache.invalidateAll();
+      return site;
+    })).isSameAs(site);
+
+    assertThat(SiteCache.size()).isZero();
+  }
+
+  @Test
+  public void testFailedResolutionIsNotCached() throws Exception {
+    try {
+      SiteCache.get("job", null, () -> {
+        throw new IllegalStateException("boom");
+      });
+    } catch (IllegalStateException e) {
+      // expected.
+    }
+    assertThat(SiteCache.size()).isZero();
+  }
+}
@@ -0,0 +1,37 @@
+package org.thoughtslive.jenkins.plugins.hubot.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test cases for SiteIndex class.
+ *
+ * @author Naresh Rayapati
+ */
+public class SiteIndexTest {
+
+  @Test
+  public void testLookupIsCaseInsensitiveAndFirstMatchWins() {
+    final HubotSite first = HubotSite.builder().name("Team").room("first").build();
+    final HubotSite second = HubotSite.builder().name("team").room("second").build();
+    final SiteIndex index = new SiteIndex(Arrays.asList(first, second));
+
+    assertThat(index.get("TEAM")).isSameAs(first);
+    assertThat(index.get("other")).isNull();
+    assertThat(index.get(null)).isNull();
+    assertThat(index.getSites()).containsExactly(first, second);
+  }
+
+  @Test
+  public void testFirstDefaultSite() {
+    final HubotSite site = HubotSite.builder().name("site").build();
+    final HubotSite firstDefault = HubotSite.builder().name("one").defaultSite(true).build();
+    final HubotSite secondDefault = HubotSite.builder().name("two").defaultSite(true).build();
+
+    assertThat(new SiteIndex(Arrays.asList(site, firstDefault, secondDefault)).getDefaultSite())
+        .isSameAs(firstDefault);
+    assertThat(SiteIndex.EMPTY.getDefaultSite()).isNull();
+  }
+}
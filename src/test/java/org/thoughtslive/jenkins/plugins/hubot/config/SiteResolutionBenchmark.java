@@ -0,0 +1,53 @@
+package org.thoughtslive.jenkins.plugins.hubot.config;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import hudson.model.FreeStyleProject;
+import hudson.model.TaskListener;
+import java.net.URL;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Resolution of {@link HubotSite#get(hudson.model.Job, TaskListener, String)} for a job nested
+ * in a deep folder tree, where the site is only defined on the top level folder.
+ *
+ * @author Naresh Rayapati
+ */
+public class SiteResolutionBenchmark {
+
+  /**
+   * Jenkins instance with the folder tree.
+   */
+  public static class FolderTree extends JmhBenchmarkState {
+
+    @Param({"5", "20"})
+    public int depth;
+
+    FreeStyleProject job;
+
+    @Override
+    public void setup() throws Exception {
+      Folder folder = getJenkins().createProject(Folder.class, "folder0");
+      final HubotFolderProperty property = new HubotFolderProperty();
+      property.setSites(HubotSite.builder().defaultSite(true).name("top").room("botlab")
+          .url(new URL("http://localhost:9090/")).build());
+      folder.addProperty(property);
+      for (int i = 1; i < depth; i++) {
+        folder = folder.createProject(Folder.class, "folder" + i);
+      }
+      job = folder.createProject(FreeStyleProject.class, "job");
+    }
+  }
+
+  @Benchmark
+  public HubotSite cached(final FolderTree state) {
+    return HubotSite.get(state.job, TaskListener.NULL, null);
+  }
+
+  @Benchmark
+  public HubotSite uncached(final FolderTree state) {
+    SiteCache.invalidateAll();
+    return HubotSite.get(state.job, TaskListener.NULL, null);
+  }
+}
@@ -0,0 +1,36 @@
+package org.thoughtslive.jenkins.plugins.hubot.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test cases for Histogram class.
+ *
+ * @author Naresh Rayapati
+ */
+public class HistogramTest {
+
+  @Test
+  public void testQuantilesUseBucketUpperBounds() {
+    final Histogram histogram = new Histogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.update(i);
+    }
+
+    assertThat(histogram.getCount()).isEqualTo(100);
+    assertThat(histogram.getMean()).isEqualTo(50.5);
+    assertThat(histogram.getQuantile(0.5)).isEqualTo(63);
+    assertThat(histogram.getQuantile(0.99)).isEqualTo(100);
+    assertThat(histogram.getMax()).isEqualTo(100);
+  }
+
+  @Test
+  public void testZeroAndEmptyHistograms() {
+    final Histogram histogram = new Histogram();
+    histogram.update(0);
+
+    assertThat(new Histogram().getQuantile(0.95)).isZero();
+    assertThat(histogram.getQuantile(0.95)).isZero();
+  }
+}
@@ -0,0 +1,50 @@
+package org.thoughtslive.jenkins.plugins.hubot.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URL;
+import org.junit.jupiter.api.Test;
+import org.thoughtslive.jenkins.plugins.hubot.config.HubotSite;
+
+/**
+ * Unit test cases for HubotMetrics class.
+ *
+ * @author Naresh Rayapati
+ */
+public class HubotMetricsTest {
+
+  @Test
+  public void testUnusedMetricsExpire() throws Exception {
+    final RoomMetrics room = HubotMetrics.get("expiring", "room");
+    room.dropped(1);
+    final FolderMetrics idle = HubotMetrics.folder("expiring-idle");
+    final FolderMetrics queued = HubotMetrics.folder("expiring-queued");
+    queued.queued(1);
+    Thread.sleep(10);
+    final RoomMetrics used = HubotMetrics.get("expiring", "used");
+
+    HubotMetrics.expire(System.currentTimeMillis() - 5);
+
+    assertThat(HubotMetrics.getAll()).doesNotContain(room).contains(used);
+    assertThat(HubotMetrics.getFolders()).doesNotContain(idle).contains(queued);
+    // Starts over once used again.
+    assertThat(HubotMetrics.get("expiring", "room").getDropped()).isZero();
+  }
+
+  @Test
+  public void testSitesWithTheSameUrlShareMetrics() throws Exception {
+    final HubotSite first = HubotSite.builder().name("shared")
+        .url(new URL("http://localhost:9090/hubot")).build();
+    final HubotSite second = HubotSite.builder().name("other")
+        .url(new URL("http://localhost:9090/hubot/")).build();
+    final HubotSite sameName = HubotSite.builder().name("shared")
+        .url(new URL("http://localhost:9091/")).build();
+
+    HubotMetrics.site(first).limited(4, 1_000_000, 2);
+
+    assertThat(HubotMetrics.site(second)).isSameAs(HubotMetrics.site(first));
+    assertThat(HubotMetrics.site(second).getRejected()).isEqualTo(2);
+    assertThat(HubotMetrics.site(sameName)).isNotSameAs(HubotMetrics.site(first));
+    assertThat(HubotMetrics.site(sameName).getUrl()).isEqualTo("http://localhost:9091/");
+  }
+}
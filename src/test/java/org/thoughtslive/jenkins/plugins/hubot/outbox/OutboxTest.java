@@ -0,0 +1,131 @@
+package org.thoughtslive.jenkins.plugins.hubot.outbox;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.thoughtslive.jenkins.plugins.hubot.api.Message;
+import org.thoughtslive.jenkins.plugins.hubot.config.HubotSite;
+
+/**
+ * Unit test cases for Outbox class.
+ *
+ * @author Naresh Rayapati
+ */
+public class OutboxTest {
+
+  @TempDir
+  Path directory;
+
+  private MockWebServer server;
+
+  private HubotSite site;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    server = new MockWebServer();
+    server.start();
+    site = HubotSite.builder().name("ops").room("botlab").url(server.url("/").url()).build();
+  }
+
+  @AfterEach
+  public void tearDown() throws Exception {
+    server.shutdown();
+  }
+
+  @Test
+  public void testEntriesSurviveRestart() throws Exception {
+    final Outbox outbox = new Outbox(directory, Outbox.SEGMENT_SIZE * 4);
+    outbox.offer(site, "botlab", Message.builder().message("first").build());
+    outbox.offer(site, "botlab", Message.builder().message("second").build());
+
+    final List<OutboxEntry> entries = new Outbox(directory, Outbox.SEGMENT_SIZE * 4)
+        .getEntries(10);
+
+    assertThat(entries).extracting(entry -> entry.getMessage().getMessage())
+        .containsExactly("first", "second");
+    assertThat(entries.get(0).getSite()).isEqualTo("ops");
+  }
+
+  @Test
+  public void testDrainDeliversInOrderAndCompacts() throws Exception {
+    server.enqueue(new MockResponse());
+    server.enqueue(new MockResponse());
+    final Outbox outbox = new Outbox(directory, Outbox.SEGMENT_SIZE * 4);
+    outbox.offer(site, "botlab", Message.builder().message("first").build());
+    outbox.offer(site, "botlab", Message.builder().message("second").build());
+
+    outbox.drain();
+
+    assertThat(outbox.size()).isZero();
+    assertThat(server.takeRequest().getBody().readUtf8()).contains("first");
+    assertThat(server.takeRequest().getBody().readUtf8()).contains("second");
+    try (Stream<Path> files = Files.list(directory)) {
+      assertThat(files).isEmpty();
+    }
+  }
+
+  @Test
+  public void testFailedDeliveryKeepsLaterEntriesForSameUrl() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(503));
+    final Outbox outbox = new Outbox(directory, Outbox.SEGMENT_SIZE * 4);
+    outbox.offer(site, "botlab", Message.builder().message("first").build());
+    outbox.offer(site, "botlab", Message.builder().message("second").build());
+
+    outbox.drain();
+
+    assertThat(outbox.size()).isEqualTo(2);
+    assertThat(server.getRequestCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testOldestEntriesDroppedWhenFull() throws Exception {
+    final Outbox outbox = new Outbox(directory, Outbox.SEGMENT_SIZE * 2);
+    final String text = new String(new char[100 * 1024]).replace('\0', 'x');
+    for (int i = 0; i < 40; i++) {
+      outbox.offer(site, "botlab", Message.builder().message(text).build());
+    }
+
+    assertThat(outbox.getSizeInBytes()).isLessThanOrEqualTo(Outbox.SEGMENT_SIZE * 2);
+    assertThat(outbox.size()).isLessThan(40);
+    assertThat(outbox.getEntries(1).get(0).getId()).isGreaterThan(1);
+  }
+
+  @Test
+  public void testEntriesStayInTheirSegmentAcrossBoundaries() throws Exception {
+    final Outbox outbox = new Outbox(directory, Outbox.SEGMENT_SIZE * 2);
+    final String text = new String(new char[100 * 1024]).replace('\0', 'x');
+    for (int i = 0; i < 25; i++) {
+      outbox.offer(site, "botlab", Message.builder().message(text).build());
+    }
+    try (Stream<Path> files = Files.list(directory)) {
+      assertThat(files.count()).isGreaterThan(1);
+    }
+
+    // Dropping the oldest segments only dropped the entries written there.
+    final Outbox reopened = new Outbox(directory, Outbox.SEGMENT_SIZE * 2);
+    assertThat(reopened.size()).isEqualTo(outbox.size());
+    assertThat(reopened.getEntries(100)).extracting(OutboxEntry::getId)
+        .containsExactlyElementsOf(outbox.getEntries(100).stream().map(OutboxEntry::getId)
+            .collect(Collectors.toList()));
+
+    for (int i = 0; i < outbox.size(); i++) {
+      server.enqueue(new MockResponse());
+    }
+    outbox.drain();
+
+    assertThat(outbox.size()).isZero();
+    try (Stream<Path> files = Files.list(directory)) {
+      assertThat(files).isEmpty();
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test cases for AdaptiveLimit class.
+ *
+ * @author Naresh Rayapati
+ */
+public class AdaptiveLimitTest {
+
+  private static final long RTT = TimeUnit.MILLISECONDS.toNanos(100);
+
+  @Test
+  public void testFailuresAndSlowResponsesCutTheLimit() {
+    final AdaptiveLimit limit = new AdaptiveLimit(10);
+    assertThat(limit.onSample(RTT, false, 10)).isEqualTo(10);
+    assertThat(limit.getRttNanos()).isEqualTo(RTT);
+
+    assertThat(limit.onSample(RTT, true, 10)).isEqualTo(9);
+    assertThat(limit.onSample(RTT * 3, false, 9)).isEqualTo(8);
+    for (int i = 0; i < 100; i++) {
+      limit.onSample(RTT, true, 1);
+    }
+    assertThat(limit.getLimit()).isEqualTo(1);
+  }
+
+  @Test
+  public void testGrowsBackWhileBusyUpToTheMax() {
+    final AdaptiveLimit limit = new AdaptiveLimit(8);
+    limit.onSample(RTT, false, 1);
+    for (int i = 0; i < 10; i++) {
+      limit.onSample(RTT, true, 1);
+    }
+    final int cut = limit.getLimit();
+    assertThat(cut).isLessThan(8);
+
+    for (int i = 0; i < 100; i++) {
+      limit.onSample(RTT, false, 0);
+    }
+    assertThat(limit.getLimit()).as("idle url").isEqualTo(cut);
+
+    for (int i = 0; i < 100; i++) {
+      limit.onSample(RTT, false, limit.getLimit());
+    }
+    assertThat(limit.getLimit()).isEqualTo(8);
+  }
+
+  @Test
+  public void testDisabledAndReconfigured() {
+    final AdaptiveLimit limit = new AdaptiveLimit(0);
+    assertThat(limit.onSample(RTT, true, 1)).isZero();
+
+    limit.configure(6);
+    assertThat(limit.getLimit()).isEqualTo(6);
+    limit.configure(4);
+    assertThat(limit.getLimit()).isEqualTo(4);
+    limit.configure(12);
+    assertThat(limit.getLimit()).as("grows from where it was").isEqualTo(4);
+  }
+}
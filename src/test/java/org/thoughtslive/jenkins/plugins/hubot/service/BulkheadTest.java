@@ -0,0 +1,80 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test cases for Bulkhead class.
+ *
+ * @author Naresh Rayapati
+ */
+public class BulkheadTest {
+
+  @Test
+  public void testRejectsOnceSlotsAndQueueAreFull() throws Exception {
+    final Bulkhead bulkhead = new Bulkhead(1, 1);
+    assertThat(bulkhead.enter()).isTrue();
+
+    final CountDownLatch entered = new CountDownLatch(1);
+    final Thread waiter = new Thread(() -> {
+      try {
+        if (bulkhead.enter()) {
+          entered.countDown();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    waiter.start();
+    while (bulkhead.getWaiting() == 0) {
+      Thread.sleep(5);
+    }
+
+    assertThat(bulkhead.enter()).isFalse();
+    assertThat(bulkhead.getRejected()).isEqualTo(1);
+    assertThat(entered.getCount()).isEqualTo(1);
+
+    bulkhead.exit();
+    assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(bulkhead.getInFlight()).isEqualTo(1);
+    assertThat(bulkhead.getWaiting()).isZero();
+  }
+
+  @Test
+  public void testRaisingTheLimitReleasesWaiters() throws Exception {
+    final Bulkhead bulkhead = new Bulkhead(1, 4);
+    assertThat(bulkhead.enter()).isTrue();
+    final CountDownLatch entered = new CountDownLatch(2);
+    for (int i = 0; i < 2; i++) {
+      new Thread(() -> {
+        try {
+          if (bulkhead.enter()) {
+            entered.countDown();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }).start();
+    }
+    while (bulkhead.getWaiting() < 2) {
+      Thread.sleep(5);
+    }
+
+    bulkhead.configure(3, 4);
+
+    assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(bulkhead.getInFlight()).isEqualTo(3);
+  }
+
+  @Test
+  public void testUnlimitedWhenDisabled() throws Exception {
+    final Bulkhead bulkhead = new Bulkhead(0, 0);
+    for (int i = 0; i < 100; i++) {
+      assertThat(bulkhead.enter()).isTrue();
+    }
+    assertThat(bulkhead.getRejected()).isZero();
+  }
+}
@@ -0,0 +1,46 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test cases for CircuitBreaker class.
+ *
+ * @author Naresh Rayapati
+ */
+public class CircuitBreakerTest {
+
+  private final CircuitBreaker breaker = new CircuitBreaker("http://localhost:9090/");
+
+  @Test
+  public void testOpensAfterConsecutiveFailures() {
+    breaker.onFailure(2);
+    assertThat(breaker.allowRequest(2, 60_000)).isTrue();
+
+    breaker.onFailure(2);
+
+    assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(breaker.allowRequest(2, 60_000)).isFalse();
+  }
+
+  @Test
+  public void testSingleTrialOnceOpenPeriodElapsed() {
+    breaker.onFailure(1);
+
+    assertThat(breaker.allowRequest(1, 0)).isTrue();
+    assertThat(breaker.allowRequest(1, 0)).isFalse();
+
+    breaker.onSuccess();
+    assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(breaker.allowRequest(1, 0)).isTrue();
+  }
+
+  @Test
+  public void testDisabledWithoutThreshold() {
+    breaker.onFailure(0);
+    breaker.onFailure(0);
+
+    assertThat(breaker.allowRequest(0, 60_000)).isTrue();
+  }
+}
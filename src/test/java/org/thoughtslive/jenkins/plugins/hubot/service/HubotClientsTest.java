@@ -0,0 +1,49 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URL;
+import java.util.Collections;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.thoughtslive.jenkins.plugins.hubot.config.HubotSite;
+
+/**
+ * Unit test cases for HubotClients class.
+ *
+ * @author Naresh Rayapati
+ */
+public class HubotClientsTest {
+
+  @AfterEach
+  public void tearDown() {
+    HubotClients.evictAll();
+  }
+
+  @Test
+  public void testSameUrlSharesEndPoints() throws Exception {
+    final HubotClient first = HubotClients.get(new URL("http://localhost:9090"));
+    final HubotClient second = HubotClients.get(new URL("http://localhost:9090/"));
+
+    assertThat(first).isSameAs(second);
+    assertThat(HubotClients.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void testEvictDropsOnlyUrlsNoLongerConfigured() throws Exception {
+    final URL removed = new URL("http://localhost:9090/");
+    final URL kept = new URL("http://localhost:9091");
+    final HubotClient first = HubotClients.get(removed);
+    final HubotClient second = HubotClients.get(kept);
+    second.nextSequence("room");
+
+    HubotClients.evict(Collections.singleton("http://localhost:9091/"),
+        HubotSite.builder().url(removed).build(), HubotSite.builder().url(kept).build());
+
+    assertThat(HubotClients.size()).isEqualTo(1);
+    assertThat(HubotClients.get(removed)).isNotSameAs(first);
+    // Keeps its state, the sequence goes on.
+    assertThat(HubotClients.get(kept)).isSameAs(second);
+    assertThat(second.nextSequence("room")).isEqualTo(2);
+  }
+}
@@ -0,0 +1,62 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import hudson.EnvVars;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.thoughtslive.jenkins.plugins.hubot.api.Message;
+import org.thoughtslive.jenkins.plugins.hubot.api.ResponseData;
+import org.thoughtslive.jenkins.plugins.hubot.config.HubotSite;
+
+/**
+ * Round trip of {@link HubotService#sendMessage(Message)} against a local MockWebServer.
+ *
+ * @author Naresh Rayapati
+ */
+@State(Scope.Benchmark)
+public class HubotServiceBenchmark {
+
+  private MockWebServer server;
+
+  private HubotService hubotService;
+
+  private Message message;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = new MockWebServer();
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(final RecordedRequest request) {
+        return new MockResponse().setResponseCode(200);
+      }
+    });
+    server.start();
+
+    final EnvVars envVars = new EnvVars();
+    for (int i = 0; i < 100; i++) {
+      envVars.put("ENV_VARIABLE_" + i, "value-" + i);
+    }
+    message = Message.builder().message("Build finished").status("SUCCESS").envVars(envVars)
+        .build();
+    hubotService = new HubotService(
+        HubotSite.builder().room("botlab").url(server.url("/").url()).build());
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    server.shutdown();
+    HubotClients.evictAll();
+  }
+
+  @Benchmark
+  public ResponseData<Void> sendMessage() {
+    return hubotService.sendMessage(message);
+  }
+}
@@ -0,0 +1,29 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.when;
+
+import org.thoughtslive.jenkins.plugins.hubot.service.HubotService.Delivery;
+
+/**
+ * Stubs of a mocked {@link HubotService} for the tests of the steps, whose messages are sent
+ * through the {@link NotificationDispatcher}.
+ *
+ * @author Naresh Rayapati
+ */
+public final class HubotServiceMocks {
+
+  private HubotServiceMocks() {
+  }
+
+  /**
+   * Sends each message the dispatcher attempts with {@link HubotService#sendMessage}, so the
+   * tests stub and verify that one only.
+   *
+   * @param service mocked service.
+   */
+  public static void sendOnAttempt(final HubotService service) {
+    when(service.attempt(any())).thenAnswer(invocation -> service
+        .sendMessage(((Delivery) invocation.getArgument(0)).getMessages().get(0)));
+  }
+}
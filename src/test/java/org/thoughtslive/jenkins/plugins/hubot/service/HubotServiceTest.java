@@ -6,12 +6,21 @@
   import com.squareup.okhttp.HttpUrl;
  import com.squareup.okhttp.mockwebserver.MockResponse;
  import com.squareup.okhttp.mockwebserver.MockWebServer;
+ import com.squareup.okhttp.mockwebserver.RecordedRequest;
+ import com.squareup.okhttp.mockwebserver.SocketPolicy;
+ import java.util.Arrays;
+ import java.util.concurrent.TimeUnit;
+ import java.util.concurrent.atomic.AtomicReference;
  import org.junit.jupiter.api.AfterEach;
  import org.junit.jupiter.api.BeforeEach;
  import org.junit.jupiter.api.Test;
  import org.thoughtslive.jenkins.plugins.hubot.api.Message;
  import org.thoughtslive.jenkins.plugins.hubot.api.ResponseData;
+ import org.thoughtslive.jenkins.plugins.hubot.config.Compression;
+ import org.thoughtslive.jenkins.plugins.hubot.config.GlobalConfig;
  import org.thoughtslive.jenkins.plugins.hubot.config.HubotSite;
+ import org.thoughtslive.jenkins.plugins.hubot.config.RateLimitPolicy;
+ import org.thoughtslive.jenkins.plugins.hubot.metrics.RoomMetrics;
 
  /**
   * Unit test case for HubotService class.
@@ -50,4 +59,180 @@
      final ResponseData<Void> response = hubotService.sendMessage(message);
      assertThat(response.getCode()).isEqualTo(200);
    }
+ 
+   @Test
+   public void testSendMessagesInOneRequest() throws Exception {
+     server.enqueue(new MockResponse());
+
+     final ResponseData<Void> response = hubotService.sendMessages(Arrays.asList(
+         Message.builder().message("first").build(), Message.builder().message("second").build()));
+     assertThat(response.getCode()).isEqualTo(200);
+
+     final RecordedRequest request = server.takeRequest();
+     assertThat(request.getPath()).isEqualTo("/hubot/notify-batch/" + room);
+     assertThat(request.getBody().readUtf8()).startsWith("[").contains("first", "second");
+   }
+
+   @Test
+   public void testBatchNotSupportedWhenNotAdvertised() throws Exception {
+     server.enqueue(new MockResponse().setResponseCode(404));
+
+     assertThat(hubotService.isBatchSupported()).isFalse();
+     assertThat(hubotService.isBatchSupported()).isFalse();
+     assertThat(server.getRequestCount()).isEqualTo(1);
+   }
+
+   @Test
+   public void testFailedBatchProbeIsCached() throws Exception {
+     server.enqueue(new MockResponse().setResponseCode(503));
+
+     assertThat(hubotService.isBatchSupported()).isFalse();
+     assertThat(hubotService.isBatchSupported()).isFalse();
+     assertThat(server.getRequestCount()).isEqualTo(1);
+   }
+ 
+   @Test
+   public void testCompressesMessagesAboveThreshold() throws Exception {
+     server.enqueue(new MockResponse());
+     server.enqueue(new MockResponse());
+     final HubotSite site = HubotSite.builder().room(room).url(server.url("/").url())
+         .compression(Compression.GZIP).compressionThreshold(100).build();
+     final HubotService service = new HubotService(site);
+
+     service.sendMessage(Message.builder().message("small").build());
+     service.sendMessage(Message.builder().message(new String(new char[200]).replace('\0', 'x'))
+         .build());
+
+     assertThat(server.takeRequest().getHeader("Content-Encoding")).isNull();
+     assertThat(server.takeRequest().getHeader("Content-Encoding")).isEqualTo("gzip");
+   }
+ 
+   @Test
+   public void testRecordsMetricsPerRoom() throws Exception {
+     server.enqueue(new MockResponse());
+     server.enqueue(new MockResponse().setResponseCode(500).setBody("error"));
+
+     hubotService.sendMessage(Message.builder().message("first").build());
+     hubotService.sendMessage(Message.builder().message("second").build());
+
+     final RoomMetrics metrics = hubotService.getMetrics();
+     assertThat(metrics.getRoom()).isEqualTo(room);
+     assertThat(metrics.getAttempts()).isEqualTo(2);
+     assertThat(metrics.getSuccesses()).isEqualTo(1);
+     assertThat(metrics.getFailuresByCode()).containsEntry("500", 1L);
+     assertThat(metrics.getLatencyMillis().getCount()).isEqualTo(2);
+     assertThat(metrics.getPayloadBytes().getMax()).isPositive();
+   }
+ 
+   @Test
+   public void testRetriesRetryableFailures() throws Exception {
+     server.enqueue(new MockResponse().setResponseCode(502));
+     server.enqueue(new MockResponse().setResponseCode(503));
+     server.enqueue(new MockResponse());
+     final HubotService service = new HubotService(HubotSite.builder().room(room)
+         .url(server.url("/").url()).retries(2).retryBackoffMillis(1).build());
+
+     assertThat(service.sendMessage(Message.builder().message("retry").build()).getCode())
+         .isEqualTo(200);
+     assertThat(server.getRequestCount()).isEqualTo(3);
+   }
+
+   @Test
+   public void testDoesNotRetryClientErrors() throws Exception {
+     server.enqueue(new MockResponse().setResponseCode(404));
+     final HubotService service = new HubotService(HubotSite.builder().room(room)
+         .url(server.url("/").url()).retries(2).retryBackoffMillis(1).build());
+
+     assertThat(service.sendMessage(Message.builder().message("missing").build()).getCode())
+         .isEqualTo(404);
+     assertThat(server.getRequestCount()).isEqualTo(1);
+   }
+ 
+   @Test
+   public void testDropsMessagesAboveRoomRateLimit() throws Exception {
+     server.enqueue(new MockResponse());
+     final HubotService service = new HubotService(HubotSite.builder().room(room)
+         .url(server.url("/").url()).roomRateLimit(1).rateLimitBurst(1)
+         .rateLimitPolicy(RateLimitPolicy.DROP).build());
+
+     assertThat(service.sendMessage(Message.builder().message("first").build()).getCode())
+         .isEqualTo(200);
+     assertThat(service.sendMessage(Message.builder().message("second").build()).getCode())
+         .isEqualTo(429);
+     assertThat(server.getRequestCount()).isEqualTo(1);
+     assertThat(service.getMetrics().getDropped()).isEqualTo(1);
+   }
+
+   @Test
+   public void testRateLimitingDoesNotOpenCircuitBreaker() throws Exception {
+     final HubotService service = new HubotService(HubotSite.builder().room(room)
+         .url(server.url("/").url()).retries(0).build());
+     for (int i = 0; i <= GlobalConfig.DEFAULT_CIRCUIT_BREAKER_THRESHOLD; i++) {
+       server.enqueue(new MockResponse().setResponseCode(429));
+       assertThat(service.sendMessage(Message.builder().message("limited").build()).getCode())
+           .isEqualTo(429);
+     }
+     server.enqueue(new MockResponse());
+ 
+     assertThat(service.sendMessage(Message.builder().message("after").build()).getCode())
+         .isEqualTo(200);
+     assertThat(server.getRequestCount())
+         .isEqualTo(GlobalConfig.DEFAULT_CIRCUIT_BREAKER_THRESHOLD + 2);
+   }
+ 
+   @Test
+   public void testParsesRetryAfter() {
+     assertThat(HubotService.retryAfterNanos("2")).isEqualTo(2_000_000_000L);
+     assertThat(HubotService.retryAfterNanos("Wed, 21 Oct 2015 07:28:00 GMT")).isZero();
+     assertThat(HubotService.retryAfterNanos("soon")).isZero();
+   }
+
+   @Test
+   public void testCancelReleasesStalledCall() throws Exception {
+     server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+     final InFlightCalls run = new InFlightCalls();
+     final HubotService service = new HubotService(HubotSite.builder().room(room)
+         .url(server.url("/").url()).retries(2).retryBackoffMillis(1).build(), run.child());
+     final AtomicReference<ResponseData<Void>> response = new AtomicReference<>();
+     final Thread sender = new Thread(
+         () -> response.set(service.sendMessage(Message.builder().message("stalled").build())));
+     sender.start();
+     server.takeRequest();
+
+     final long aborted = System.nanoTime();
+     run.cancel();
+     sender.join(10_000);
+     final long releasedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - aborted);
+
+     // Well below the read timeout, without retrying the cancelled call.
+     assertThat(sender.isAlive()).isFalse();
+     assertThat(releasedMillis).isLessThan(2_000);
+     assertThat(response.get().getError()).contains("cancelled");
+     assertThat(server.getRequestCount()).isEqualTo(1);
+     assertThat(service.sendMessage(Message.builder().message("after").build()).getError())
+         .contains("cancelled");
+   }
+
+   @Test
+   public void testCancelWakesUpBackoff() throws Exception {
+     server.enqueue(new MockResponse().setResponseCode(503));
+     final InFlightCalls run = new InFlightCalls();
+     final HubotService service = new HubotService(HubotSite.builder().room(room)
+         .url(server.url("/").url()).retries(1).retryBackoffMillis(20_000).build(), run.child());
+     final AtomicReference<ResponseData<Void>> response = new AtomicReference<>();
+     final Thread sender = new Thread(
+         () -> response.set(service.sendMessage(Message.builder().message("backoff").build())));
+     sender.start();
+     server.takeRequest();
+
+     final long aborted = System.nanoTime();
+     run.cancel();
+     sender.join(30_000);
+
+     // Well below the 10 to 20 seconds of backoff, without the second attempt.
+     assertThat(sender.isAlive()).isFalse();
+     assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - aborted)).isLessThan(2_000);
+     assertThat(response.get().getError()).contains("cancelled");
+     assertThat(server.getRequestCount()).isEqualTo(1);
+   }
  }
@@ -0,0 +1,57 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.List;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+import org.thoughtslive.jenkins.plugins.hubot.api.Message;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/**
+ * Unit test cases for MessageConverterFactory class.
+ *
+ * @author Naresh Rayapati
+ */
+public class MessageConverterFactoryTest {
+
+  private final MessageConverterFactory factory = new MessageConverterFactory();
+
+  private final Retrofit retrofit = new Retrofit.Builder().baseUrl("http://localhost/")
+      .addConverterFactory(factory).build();
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testStreamsMessages() throws Exception {
+    final Converter<Message, RequestBody> converter = (Converter<Message, RequestBody>) factory
+        .requestBodyConverter(Message.class, new Annotation[0], new Annotation[0], retrofit);
+    final RequestBody body = converter.convert(Message.builder().message("Hello").build());
+    final Buffer buffer = new Buffer();
+
+    body.writeTo(buffer);
+
+    assertThat(body.contentLength()).isEqualTo(-1);
+    assertThat(body.contentType().toString()).startsWith("application/json");
+    assertThat(buffer.readUtf8()).contains("\"message\":\"Hello\"").doesNotContain("\n");
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testStreamsMessageLists() throws Exception {
+    final Converter<List<Message>, RequestBody> converter =
+        (Converter<List<Message>, RequestBody>) retrofit.requestBodyConverter(
+            HubotEndPoints.class.getMethod("sendMessages", String.class, List.class,
+                GzipRequestInterceptor.Threshold.class).getGenericParameterTypes()[1],
+            new Annotation[0], new Annotation[0]);
+    final Buffer buffer = new Buffer();
+
+    converter.convert(Arrays.asList(Message.builder().message("a").build(),
+        Message.builder().message("b").build())).writeTo(buffer);
+
+    assertThat(buffer.readUtf8()).startsWith("[{").endsWith("}]");
+  }
+}
@@ -0,0 +1,62 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hudson.EnvVars;
+import java.io.IOException;
+import okio.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.thoughtslive.jenkins.plugins.hubot.api.Message;
+import org.thoughtslive.jenkins.plugins.hubot.util.Json;
+
+/**
+ * Compares the previous Message serialization, a fresh mapper and an intermediate byte array per
+ * body, against the shared writer streaming into the request sink.
+ *
+ * @author Naresh Rayapati
+ */
+@State(Scope.Thread)
+public class MessageSerializationBenchmark {
+
+  @Param({"50", "200", "1000"})
+  public int envVarsSize;
+
+  private Message message;
+
+  private final Buffer sink = new Buffer();
+
+  @Setup
+  public void setUp() {
+    final EnvVars envVars = new EnvVars();
+    for (int i = 0; i < envVarsSize; i++) {
+      envVars.put("ENV_VARIABLE_" + i, "/var/lib/jenkins/workspace/folder/job/value-" + i);
+    }
+    message = Message.builder().message("Build finished").status("SUCCESS").userId("admin")
+        .userName("Admin").buildCause("Started by user Admin").stepName("BUILD")
+        .ts(System.currentTimeMillis()).envVars(envVars).build();
+  }
+
+  @Benchmark
+  public long freshMapperToBytes() throws IOException {
+    sink.clear();
+    sink.write(new ObjectMapper().writerFor(Message.class).writeValueAsBytes(message));
+    return sink.size();
+  }
+
+  @Benchmark
+  public long sharedWriterToBytes() throws IOException {
+    sink.clear();
+    sink.write(Json.MESSAGE_WRITER.writeValueAsBytes(message));
+    return sink.size();
+  }
+
+  @Benchmark
+  public long sharedWriterStreaming() throws IOException {
+    sink.clear();
+    new MessageConverterFactory.StreamingBody(Json.MESSAGE_WRITER, message).writeTo(sink);
+    return sink.size();
+  }
+}
@@ -0,0 +1,82 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.Test;
+import org.thoughtslive.jenkins.plugins.hubot.api.Message;
+import org.thoughtslive.jenkins.plugins.hubot.config.HubotSite;
+import org.thoughtslive.jenkins.plugins.hubot.metrics.HubotMetrics;
+import org.thoughtslive.jenkins.plugins.hubot.metrics.RoomMetrics;
+
+/**
+ * Unit test cases for NotificationCoalescer class.
+ *
+ * @author Naresh Rayapati
+ */
+public class NotificationCoalescerTest {
+
+  @Test
+  public void testRepeatsAreSummarized() throws Exception {
+    final RoomMetrics metrics = HubotMetrics
+        .get(HubotSite.builder().name("coalescer").build(), "coalesced");
+    final HubotService service = mock(HubotService.class);
+    when(service.getRoom()).thenReturn("coalesced");
+    when(service.getMetrics()).thenReturn(metrics);
+    final List<Message> sent = new CopyOnWriteArrayList<>();
+    final NotificationCoalescer coalescer = new NotificationCoalescer(200,
+        (job, s, message, callback, blocking) -> sent.add(message));
+
+    assertThat(coalescer.add("job", 1, service, message("FAILURE"), null)).isTrue();
+    assertThat(coalescer.add("job", 2, service, message("FAILURE"), null)).isFalse();
+    assertThat(coalescer.add("job", 3, service, message("BACK_TO_NORMAL"), null)).isTrue();
+    assertThat(coalescer.add("job", 4, service, message("SUCCESS"), null)).isTrue();
+    assertThat(coalescer.add("job", 5, service, message("SUCCESS"), null)).isFalse();
+    assertThat(coalescer.add("job", 6, service, message("SUCCESS"), null)).isFalse();
+    assertThat(coalescer.add("other", 1, service, message("FAILURE"), null)).isTrue();
+    assertThat(sent).hasSize(4);
+    assertThat(metrics.getSuppressed()).isEqualTo(3);
+
+    Thread.sleep(1000);
+
+    // The failure of build #2 is older than the builds notified since, it is not summarized.
+    assertThat(sent).hasSize(5);
+    final Message summary = sent.get(4);
+    assertThat(summary.getStatus()).isEqualTo("SUCCESS");
+    assertThat(summary.getMessage()).isEqualTo("SUCCESS (repeated 2 times, latest build #6)");
+    assertThat(summary.getExtraData()).containsEntry("coalesced", 2)
+        .containsEntry("latestBuild", 6);
+
+    // Quiet windows close without a summary, the next notification is sent right away.
+    assertThat(coalescer.add("job", 7, service, message("SUCCESS"), null)).isTrue();
+    assertThat(sent).hasSize(6);
+  }
+
+  @Test
+  public void testSummaryOfNewerBuildIsKept() throws Exception {
+    final HubotService service = mock(HubotService.class);
+    when(service.getRoom()).thenReturn("coalesced-newer");
+    when(service.getMetrics()).thenReturn(HubotMetrics
+        .get(HubotSite.builder().name("coalescer").build(), "coalesced-newer"));
+    final List<Message> sent = new CopyOnWriteArrayList<>();
+    final NotificationCoalescer coalescer = new NotificationCoalescer(200,
+        (job, s, message, callback, blocking) -> sent.add(message));
+
+    assertThat(coalescer.add("job", 1, service, message("FAILURE"), null)).isTrue();
+    assertThat(coalescer.add("job", 3, service, message("FAILURE"), null)).isFalse();
+    // Finished after build #3, yet it is older.
+    assertThat(coalescer.add("job", 2, service, message("SUCCESS"), null)).isTrue();
+
+    Thread.sleep(1000);
+
+    assertThat(sent).hasSize(3);
+    assertThat(sent.get(2).getMessage()).isEqualTo("FAILURE (repeated 1 time, latest build #3)");
+  }
+
+  private static Message message(final String status) {
+    return Message.builder().message(status).status(status).build();
+  }
+}
@@ -0,0 +1,443 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.thoughtslive.jenkins.plugins.hubot.api.Message;
+import org.thoughtslive.jenkins.plugins.hubot.api.ResponseData;
+import org.thoughtslive.jenkins.plugins.hubot.config.HubotSite;
+import org.thoughtslive.jenkins.plugins.hubot.config.notifications.Type;
+import org.thoughtslive.jenkins.plugins.hubot.metrics.HubotMetrics;
+import org.thoughtslive.jenkins.plugins.hubot.service.HubotService.Delivery;
+import org.thoughtslive.jenkins.plugins.hubot.service.NotificationDispatcher.OverflowPolicy;
+
+/**
+ * Unit test cases for NotificationDispatcher class.
+ *
+ * @author Naresh Rayapati
+ */
+public class NotificationDispatcherTest {
+
+  @Test
+  public void testDropNewestWhenQueueIsFull() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(3);
+    final HubotService service = service("room");
+    when(service.attempt(any())).thenAnswer(invocation -> {
+      release.await(10, TimeUnit.SECONDS);
+      return ResponseData.<Void>builder().successful(true).code(200).build();
+    });
+    final List<Integer> codes = new CopyOnWriteArrayList<>();
+
+    final NotificationDispatcher dispatcher = new NotificationDispatcher(1, 1,
+        OverflowPolicy.DROP_NEWEST);
+    for (int i = 0; i < 3; i++) {
+      dispatcher.dispatch(service, Message.builder().message("message " + i).build(),
+          response -> {
+            codes.add(response.getCode());
+            done.countDown();
+          });
+      Thread.sleep(50);
+    }
+    release.countDown();
+
+    assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(codes).containsExactly(-1, 200, 200);
+  }
+
+  @Test
+  public void testSameRoomInOrderOtherRoomsInParallel() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(40);
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+    final List<String> sent = new CopyOnWriteArrayList<>();
+    final HubotService blocked = service("blocked");
+    final HubotService other = service("other");
+    when(blocked.attempt(any())).thenAnswer(invocation -> {
+      maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+      release.await(10, TimeUnit.SECONDS);
+      Thread.sleep(1);
+      sent.add(message(invocation).getMessage());
+      inFlight.decrementAndGet();
+      return ResponseData.<Void>builder().successful(true).code(200).build();
+    });
+    when(other.attempt(any()))
+        .thenReturn(ResponseData.<Void>builder().successful(true).code(200).build());
+
+    final NotificationDispatcher dispatcher = new NotificationDispatcher(4, 100,
+        OverflowPolicy.DROP_NEWEST);
+    final List<String> expected = new ArrayList<>();
+    final CountDownLatch otherDone = new CountDownLatch(20);
+    for (int i = 0; i < 20; i++) {
+      expected.add("message " + i);
+      dispatcher.send("job", blocked, Message.builder().message("message " + i).build(),
+          response -> done.countDown());
+      dispatcher.dispatch(other, Message.builder().message("message " + i).build(),
+          response -> {
+            otherDone.countDown();
+            done.countDown();
+          });
+    }
+
+    // The other room isn't held up by the blocked one.
+    assertThat(otherDone.await(10, TimeUnit.SECONDS)).isTrue();
+    release.countDown();
+
+    assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(sent).isEqualTo(expected);
+    assertThat(maxInFlight.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testDroppedMessagesLeaveSequenceGap() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(4);
+    final HubotService service = service("room");
+    final List<Long> sent = new CopyOnWriteArrayList<>();
+    when(service.attempt(any())).thenAnswer(invocation -> {
+      release.await(10, TimeUnit.SECONDS);
+      sent.add(message(invocation).getSeq());
+      return ResponseData.<Void>builder().successful(true).code(200).build();
+    });
+
+    final NotificationDispatcher dispatcher = new NotificationDispatcher(1, 1,
+        OverflowPolicy.DROP_OLDEST);
+    for (int i = 0; i < 4; i++) {
+      dispatcher.dispatch(service, Message.builder().message("message " + i).build(),
+          response -> done.countDown());
+      Thread.sleep(50);
+    }
+    release.countDown();
+
+    assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(sent).containsExactly(1L, 4L);
+  }
+
+  @Test
+  public void testDroppedMessagesDoNotReserveTheRateLimit() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(3);
+    final AtomicInteger reserved = new AtomicInteger();
+    final HubotService service = service("room");
+    when(service.reserve(anyInt())).thenAnswer(invocation -> {
+      reserved.incrementAndGet();
+      return -1L;
+    });
+    when(service.attempt(any())).thenAnswer(invocation -> {
+      release.await(10, TimeUnit.SECONDS);
+      return ResponseData.<Void>builder().successful(true).code(200).build();
+    });
+
+    final NotificationDispatcher dispatcher = new NotificationDispatcher(1, 1,
+        OverflowPolicy.DROP_NEWEST);
+    for (int i = 0; i < 3; i++) {
+      dispatcher.dispatch(service, Message.builder().message("message " + i).build(),
+          response -> done.countDown());
+      Thread.sleep(50);
+    }
+    release.countDown();
+
+    assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(reserved.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testImportantRoomsGoFirst() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(4);
+    final List<String> sent = new CopyOnWriteArrayList<>();
+    final NotificationDispatcher dispatcher = new NotificationDispatcher(1, 10,
+        OverflowPolicy.DROP_NEWEST);
+    final HubotService busy = service("busy");
+    when(busy.attempt(any())).thenAnswer(invocation -> {
+      release.await(10, TimeUnit.SECONDS);
+      return ResponseData.<Void>builder().successful(true).code(200).build();
+    });
+    dispatcher.dispatch(busy, Message.builder().status(Type.SUCCESS.name()).build(),
+        response -> done.countDown());
+    Thread.sleep(50);
+
+    for (Type type : new Type[] {Type.STARTED, Type.SUCCESS, Type.FAILURE}) {
+      final HubotService service = service(type.name());
+      when(service.attempt(any())).thenAnswer(invocation -> {
+        sent.add(type.name());
+        return ResponseData.<Void>builder().successful(true).code(200).build();
+      });
+      dispatcher.dispatch(service, Message.builder().status(type.name()).build(),
+          response -> done.countDown());
+    }
+    release.countDown();
+
+    assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(sent).containsExactly("FAILURE", "SUCCESS", "STARTED");
+  }
+
+  @Test
+  public void testLowPriorityIsShedFirst() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(4);
+    final List<String> dropped = new CopyOnWriteArrayList<>();
+    final NotificationDispatcher dispatcher = new NotificationDispatcher(1, 2,
+        OverflowPolicy.DROP_NEWEST);
+    final HubotService service = service("room");
+    when(service.attempt(any())).thenAnswer(invocation -> {
+      release.await(10, TimeUnit.SECONDS);
+      return ResponseData.<Void>builder().successful(true).code(200).build();
+    });
+
+    for (String text : new String[] {"sending", "started 1", "started 2", "failure"}) {
+      final Message message = Message.builder().message(text)
+          .status(text.startsWith("started") ? Type.STARTED.name() : Type.FAILURE.name()).build();
+      dispatcher.dispatch(service, message, response -> {
+        if (!response.isSuccessful()) {
+          dropped.add(text);
+        }
+        done.countDown();
+      });
+      Thread.sleep(50);
+    }
+    release.countDown();
+
+    assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(dropped).containsExactly("started 1");
+  }
+
+  @Test
+  public void testFoldersTakeTurns() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(9);
+    final List<String> sent = new CopyOnWriteArrayList<>();
+    final NotificationDispatcher dispatcher = new NotificationDispatcher(1, 100,
+        OverflowPolicy.DROP_NEWEST, 0, 1, 0, NotificationDispatcher.parseWeights("small=1"));
+    final HubotService busy = service("busy");
+    when(busy.attempt(any())).thenAnswer(invocation -> {
+      release.await(10, TimeUnit.SECONDS);
+      return ResponseData.<Void>builder().successful(true).code(200).build();
+    });
+    dispatcher.dispatch("big/job", busy, Message.builder().build(), response -> done.countDown());
+    Thread.sleep(50);
+
+    for (String room : new String[] {"big 1", "big 2", "big 3", "big 4", "big 5", "big 6",
+        "small 1", "small 2"}) {
+      final HubotService service = service(room);
+      when(service.attempt(any())).thenAnswer(invocation -> {
+        sent.add(room);
+        return ResponseData.<Void>builder().successful(true).code(200).build();
+      });
+      dispatcher.dispatch(room.startsWith("big") ? "big/job" : "small/job/branch", service,
+          Message.builder().build(), response -> done.countDown());
+    }
+    assertThat(HubotMetrics.folder("small").getQueueDepth()).isEqualTo(2);
+    release.countDown();
+
+    assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+    // Behind six messages from the other folder when sent in queue order.
+    assertThat(sent.indexOf("small 2")).isLessThanOrEqualTo(3);
+    assertThat(HubotMetrics.folder("small").getQueueDepth()).isZero();
+    assertThat(HubotMetrics.folder("small").getWaitMillis().getCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void testSlowUrlLeavesWorkersForOtherUrls() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(5);
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+    final NotificationDispatcher dispatcher = new NotificationDispatcher(4, 100,
+        OverflowPolicy.DROP_NEWEST, 0, 1, 0, Collections.emptyMap(), 2);
+    for (int i = 0; i < 4; i++) {
+      final HubotService slow = service("slow " + i);
+      when(slow.getUrl()).thenReturn(new URL("http://slow/"));
+      when(slow.attempt(any())).thenAnswer(invocation -> {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        release.await(10, TimeUnit.SECONDS);
+        inFlight.decrementAndGet();
+        return ResponseData.<Void>builder().successful(true).code(200).build();
+      });
+      dispatcher.dispatch(slow, Message.builder().build(), response -> done.countDown());
+    }
+    final CountDownLatch fastDone = new CountDownLatch(1);
+    final HubotService fast = service("fast");
+    when(fast.getUrl()).thenReturn(new URL("http://fast/"));
+    when(fast.attempt(any()))
+        .thenReturn(ResponseData.<Void>builder().successful(true).code(200).build());
+    dispatcher.dispatch(fast, Message.builder().build(), response -> {
+      fastDone.countDown();
+      done.countDown();
+    });
+
+    assertThat(fastDone.await(5, TimeUnit.SECONDS)).isTrue();
+    release.countDown();
+
+    assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(maxInFlight.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testRetryWaitsWithoutHoldingAWorker() throws Exception {
+    final CountDownLatch done = new CountDownLatch(3);
+    final List<String> sent = new CopyOnWriteArrayList<>();
+    final NotificationDispatcher dispatcher = new NotificationDispatcher(1, 10,
+        OverflowPolicy.DROP_NEWEST);
+    final HubotService retried = service("retried");
+    final AtomicInteger attempts = new AtomicInteger();
+    when(retried.attempt(any())).thenAnswer(invocation -> {
+      if (attempts.incrementAndGet() == 1) {
+        return ((Delivery) invocation.getArgument(0)).defer(TimeUnit.MILLISECONDS.toNanos(500));
+      }
+      sent.add(message(invocation).getMessage());
+      return ResponseData.<Void>builder().successful(true).code(200).build();
+    });
+    final HubotService other = service("other");
+    when(other.attempt(any())).thenAnswer(invocation -> {
+      sent.add(message(invocation).getMessage());
+      return ResponseData.<Void>builder().successful(true).code(200).build();
+    });
+
+    dispatcher.dispatch(retried, Message.builder().message("retried 1").build(),
+        response -> done.countDown());
+    dispatcher.dispatch(retried, Message.builder().message("retried 2").build(),
+        response -> done.countDown());
+    Thread.sleep(50);
+    dispatcher.dispatch(other, Message.builder().message("other").build(),
+        response -> done.countDown());
+
+    assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+    // The only worker sent the other room meanwhile, the retried room kept its order.
+    assertThat(sent).containsExactly("other", "retried 1", "retried 2");
+    assertThat(attempts.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void testReconfiguredInPlace() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch otherDone = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(2);
+    final List<String> sent = new CopyOnWriteArrayList<>();
+    final HubotService blocked = service("blocked");
+    when(blocked.getUrl()).thenReturn(new URL("http://blocked/"));
+    when(blocked.attempt(any())).thenAnswer(invocation -> {
+      release.await(10, TimeUnit.SECONDS);
+      sent.add(message(invocation).getMessage());
+      return ResponseData.<Void>builder().successful(true).code(200).build();
+    });
+    final HubotService other = service("other");
+    when(other.getUrl()).thenReturn(new URL("http://other/"));
+    when(other.attempt(any()))
+        .thenReturn(ResponseData.<Void>builder().successful(true).code(200).build());
+
+    final NotificationDispatcher dispatcher = new NotificationDispatcher(1, 10,
+        OverflowPolicy.DROP_NEWEST);
+    dispatcher.dispatch(blocked, Message.builder().message("first").build(),
+        response -> done.countDown());
+    Thread.sleep(50);
+    dispatcher.dispatch(other, Message.builder().message("other").build(),
+        response -> otherDone.countDown());
+    dispatcher.dispatch(blocked, Message.builder().message("second").build(),
+        response -> done.countDown());
+    assertThat(otherDone.await(200, TimeUnit.MILLISECONDS)).isFalse();
+
+    dispatcher.configure(2, 10, OverflowPolicy.DROP_NEWEST, 0, 1, 0, Collections.emptyMap(), 0);
+
+    // A worker is added for the waiting room, the queued messages keep their place.
+    assertThat(otherDone.await(10, TimeUnit.SECONDS)).isTrue();
+    release.countDown();
+    assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(sent).containsExactly("first", "second");
+  }
+
+  @Test
+  public void testCallerRunsSendsQueuedMessagesOnTheCallerThread() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(3);
+    final List<String> threads = new CopyOnWriteArrayList<>();
+    final HubotService blocked = service("blocked");
+    when(blocked.getUrl()).thenReturn(new URL("http://blocked/"));
+    when(blocked.attempt(any())).thenAnswer(invocation -> {
+      release.await(10, TimeUnit.SECONDS);
+      return ResponseData.<Void>builder().successful(true).code(200).build();
+    });
+    final HubotService queued = service("queued");
+    when(queued.getUrl()).thenReturn(new URL("http://queued/"));
+    when(queued.attempt(any())).thenAnswer(invocation -> {
+      threads.add(Thread.currentThread().getName());
+      return ResponseData.<Void>builder().successful(true).code(200).build();
+    });
+
+    final NotificationDispatcher dispatcher = new NotificationDispatcher(1, 1,
+        OverflowPolicy.CALLER_RUNS);
+    dispatcher.dispatch(blocked, Message.builder().build(), response -> done.countDown());
+    Thread.sleep(50);
+    dispatcher.dispatch(queued, Message.builder().build(), response -> done.countDown());
+    dispatcher.dispatch(queued, Message.builder().build(), response -> done.countDown());
+
+    // The queue was full, the caller sent the queued message to make room.
+    assertThat(threads).containsExactly(Thread.currentThread().getName());
+    release.countDown();
+    assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(threads).hasSize(2);
+  }
+
+  @Test
+  public void testNoResponseWithoutDelayFails() throws Exception {
+    final CountDownLatch done = new CountDownLatch(1);
+    final List<ResponseData<Void>> responses = new CopyOnWriteArrayList<>();
+    final HubotService service = service("room");
+    final AtomicInteger attempts = new AtomicInteger();
+    when(service.attempt(any())).thenAnswer(invocation -> {
+      attempts.incrementAndGet();
+      return null;
+    });
+
+    new NotificationDispatcher(1, 10, OverflowPolicy.DROP_NEWEST).dispatch(service,
+        Message.builder().message("message").build(), response -> {
+          responses.add(response);
+          done.countDown();
+        });
+
+    assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(responses.get(0).getCode()).isEqualTo(-1);
+    assertThat(attempts.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testFolderWeightsAndNames() {
+    assertThat(NotificationDispatcher.parseWeights("platform=3, web = 2\ninvalid\nother=x"))
+        .containsOnly(entry("platform", 3), entry("web", 2));
+    assertThat(NotificationDispatcher.parseWeights(null)).isEmpty();
+    assertThat(NotificationDispatcher.folderOf("platform/service/main")).isEqualTo("platform");
+    assertThat(NotificationDispatcher.folderOf("job")).isEqualTo("job");
+    assertThat(NotificationDispatcher.folderOf(null)).isEqualTo(NotificationDispatcher.NO_FOLDER);
+  }
+
+  private static Message message(final InvocationOnMock invocation) {
+    return ((Delivery) invocation.getArgument(0)).getMessages().get(0);
+  }
+
+  private static HubotService service(final String room) {
+    final HubotService service = mock(HubotService.class);
+    final AtomicLong sequence = new AtomicLong();
+    when(service.getRoom()).thenReturn(room);
+    when(service.reserve(anyInt())).thenReturn(-1L);
+    when(service.nextSequence()).thenAnswer(invocation -> sequence.incrementAndGet());
+    when(service.getMetrics())
+        .thenReturn(HubotMetrics.get(HubotSite.builder().name("dispatcher").build(), room));
+    return service;
+  }
+}
@@ -0,0 +1,39 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.thoughtslive.jenkins.plugins.hubot.api.Message;
+import org.thoughtslive.jenkins.plugins.hubot.config.notifications.Type;
+import org.thoughtslive.jenkins.plugins.hubot.util.Common.STEP;
+
+/**
+ * Unit test cases for Priority class.
+ *
+ * @author Naresh Rayapati
+ */
+public class PriorityTest {
+
+  @Test
+  public void testClassification() {
+    assertThat(priority(STEP.APPROVE, Type.STARTED.name())).isEqualTo(Priority.HIGH);
+    assertThat(priority(STEP.BUILD, Type.FAILURE.name())).isEqualTo(Priority.HIGH);
+    assertThat(priority(STEP.BUILD, Type.UNSTABLE.name())).isEqualTo(Priority.HIGH);
+    assertThat(priority(STEP.BUILD, Type.BACK_TO_NORMAL.name())).isEqualTo(Priority.NORMAL);
+    assertThat(priority(STEP.BUILD, Type.SUCCESS.name())).isEqualTo(Priority.NORMAL);
+    assertThat(priority(STEP.BUILD, Type.STARTED.name())).isEqualTo(Priority.LOW);
+    assertThat(priority(STEP.SEND, "Deploying")).isEqualTo(Priority.NORMAL);
+    assertThat(priority(STEP.SEND, null)).isEqualTo(Priority.NORMAL);
+  }
+
+  @Test
+  public void testLowPriorityIsNotStarved() {
+    assertThat(Priority.HIGH.deadline(0)).isLessThan(Priority.NORMAL.deadline(0));
+    assertThat(Priority.LOW.deadline(0)).isLessThan(Priority.HIGH.deadline(Priority.LOW
+        .deadline(0) + 1));
+  }
+
+  private static Priority priority(final STEP step, final String status) {
+    return Priority.of(Message.builder().stepName(step.name()).status(status).build());
+  }
+}
@@ -0,0 +1,47 @@
+package org.thoughtslive.jenkins.plugins.hubot.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test cases for TokenBucket class.
+ *
+ * @author Naresh Rayapati
+ */
+public class TokenBucketTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  public void testBurstThenRate() {
+    final TokenBucket bucket = new TokenBucket(60, 2, 0);
+
+    assertThat(bucket.tryAcquire(1, 0)).isTrue();
+    assertThat(bucket.tryAcquire(1, 0)).isTrue();
+    assertThat(bucket.tryAcquire(1, 0)).isFalse();
+    assertThat(bucket.tryAcquire(1, 2 * SECOND)).isTrue();
+  }
+
+  @Test
+  public void testReservationsQueueUp() {
+    final TokenBucket bucket = new TokenBucket(60, 1, 0);
+
+    assertThat(bucket.reserve(1, 0)).isZero();
+    assertThat(bucket.reserve(1, 0)).isCloseTo(SECOND, within(10L));
+    assertThat(bucket.reserve(1, 0)).isCloseTo(2 * SECOND, within(10L));
+  }
+
+  @Test
+  public void testPauseAppliesToUnlimitedBuckets() {
+    final TokenBucket bucket = new TokenBucket(0, 1, 0);
+
+    bucket.pause(5 * SECOND, 0);
+
+    assertThat(bucket.tryAcquire(1, SECOND)).isFalse();
+    assertThat(bucket.reserve(1, SECOND)).isEqualTo(4 * SECOND);
+    assertThat(bucket.tryAcquire(1, 5 * SECOND)).isTrue();
+  }
+}
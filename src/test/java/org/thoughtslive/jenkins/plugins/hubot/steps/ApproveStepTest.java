@@ -3,8 +3,10 @@ package org.thoughtslive.jenkins.plugins.hubot.steps;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.argThat;
 import static org.mockito.Mockito.doNothing;
-import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -24,6 +26,7 @@ import org.mockito.MockitoAnnotations;
 import org.thoughtslive.jenkins.plugins.hubot.api.ResponseData;
 import org.thoughtslive.jenkins.plugins.hubot.api.ResponseData.ResponseDataBuilder;
 import org.thoughtslive.jenkins.plugins.hubot.service.HubotService;
+import org.thoughtslive.jenkins.plugins.hubot.service.HubotServiceMocks;
 
 /**
  * Unit test cases for SendStep class.
@@ -61,6 +64,8 @@ public class ApproveStepTest {
     final ResponseDataBuilder<Void> builder = ResponseData.builder();
     when(hubotServiceMock.sendMessage(any()))
         .thenReturn(builder.successful(true).code(200).message("Success").build());
+    // Async messages are sent by the dispatcher, which attempts them one at a time.
+    HubotServiceMocks.sendOnAttempt(hubotServiceMock);
 
     when(envVarsMock.get("HUBOT_URL")).thenReturn("http://localhost:9090/");
     when(envVarsMock.get("BUILD_URL")).thenReturn("http://localhost:9090/hubot-testing/job/01");
@@ -126,17 +131,19 @@ public class ApproveStepTest {
   public void testErrorMessageSend() throws Exception {
     final ApproveStep step = new ApproveStep("message");
     step.setRoom("room");
-    stepExecution = new ApproveStep.ApproveStepExecution(step, contextMock);
+    stepExecution = pausedExecution(step);
     stepExecution.setHubotService(hubotServiceMock);
 
     final ResponseDataBuilder<Void> builder = ResponseData.builder();
     when(hubotServiceMock.sendMessage(any()))
         .thenReturn(builder.successful(false).code(400).error("fake error.").build());
 
+    // Execute Test.
+    assertThat(stepExecution.start()).isFalse();
+
     // Assert Test
-    assertThatExceptionOfType(AbortException.class).isThrownBy(() -> {
-      stepExecution.start();
-    }).withMessage("fake error.").withStackTraceContaining("AbortException").withNoCause();
+    verify(contextMock, timeout(5000)).onFailure(
+        argThat(e -> e instanceof AbortException && "fake error.".equals(e.getMessage())));
   }
 
   @Test
@@ -155,6 +162,22 @@ public class ApproveStepTest {
 
   @Test
   public void testSuccessfulMessageSend() throws Exception {
+    final ApproveStep step = new ApproveStep("message");
+    step.setRoom("room");
+    stepExecution = pausedExecution(step);
+    stepExecution.setHubotService(hubotServiceMock);
+
+    // Execute Test.
+    assertThat(stepExecution.start()).isFalse();
+
+    // Assert Test
+    verify(hubotServiceMock, timeout(5000)).sendMessage(any());
+    verify(contextMock, never()).onFailure(any());
+    assertThat(step.getFailOnError()).isEqualTo(null);
+  }
+
+  @Test
+  public void testMessageNotSentWhenInputFails() throws Exception {
     final ApproveStep step = new ApproveStep("message");
     step.setRoom("room");
     stepExecution = new ApproveStep.ApproveStepExecution(step, contextMock);
@@ -163,11 +186,23 @@ public class ApproveStepTest {
     // Execute Test. TODO Mock InputStep too.
     assertThatExceptionOfType(AbortException.class).isThrownBy(() -> {
       stepExecution.start();
-    }).withMessageStartingWith("Error while sending message:")
+    }).withMessageStartingWith("Hubot: Unable to wait for input:")
         .withStackTraceContaining("AbortException").withNoCause();
 
     // Assert Test
-    verify(hubotServiceMock, times(1)).sendMessage(any());
-    assertThat(step.getFailOnError()).isEqualTo(null);
+    verify(hubotServiceMock, never()).sendMessage(any());
+  }
+
+  /**
+   * Execution with the input pause registered, without a running Jenkins.
+   */
+  private ApproveStep.ApproveStepExecution pausedExecution(final ApproveStep step)
+      throws Exception {
+    return new ApproveStep.ApproveStepExecution(step, contextMock) {
+      @Override
+      protected boolean startInput() {
+        return false;
+      }
+    };
   }
 }
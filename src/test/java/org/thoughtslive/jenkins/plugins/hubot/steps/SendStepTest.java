@@ -15,15 +15,19 @@ import hudson.model.Run;
 import hudson.model.TaskListener;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.jenkinsci.plugins.workflow.steps.StepContext;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.thoughtslive.jenkins.plugins.hubot.api.Message;
 import org.thoughtslive.jenkins.plugins.hubot.api.ResponseData;
 import org.thoughtslive.jenkins.plugins.hubot.api.ResponseData.ResponseDataBuilder;
 import org.thoughtslive.jenkins.plugins.hubot.service.HubotService;
+import org.thoughtslive.jenkins.plugins.hubot.service.HubotServiceMocks;
 
 /**
  * Unit test cases for SendStep class.
@@ -63,6 +67,8 @@ public class SendStepTest {
     final ResponseDataBuilder<Void> builder = ResponseData.builder();
     when(hubotServiceMock.sendMessage(any()))
         .thenReturn(builder.successful(true).code(200).message("Success").build());
+    // Async messages are sent by the dispatcher, which attempts them one at a time.
+    HubotServiceMocks.sendOnAttempt(hubotServiceMock);
 
     when(envVarsMock.get("HUBOT_URL")).thenReturn("http://localhost:9090/");
     when(envVarsMock.get("BUILD_URL")).thenReturn("http://localhost:9090/hubot-testing/job/01");
@@ -171,4 +177,69 @@ public class SendStepTest {
     verify(hubotServiceMock, times(1)).sendMessage(any());
     assertThat(step.getFailOnError()).isEqualTo(null);
   }
+
+  @Test
+  public void testAsyncMessagesAreSentInOrderAndFlushed() throws Exception {
+    final List<String> sent = new CopyOnWriteArrayList<>();
+    when(hubotServiceMock.sendMessage(any())).thenAnswer(invocation -> {
+      sent.add(((Message) invocation.getArgument(0)).getMessage());
+      return ResponseData.<Void>builder().successful(true).code(200).build();
+    });
+    for (int i = 0; i < 5; i++) {
+      final SendStep step = new SendStep("message " + i);
+      step.setRoom("room");
+      step.setAsync(true);
+      stepExecution = new SendStep.SendStepExecution(step, contextMock);
+      stepExecution.setHubotService(hubotServiceMock);
+      assertThat(stepExecution.run()).isTrue();
+    }
+
+    final FlushStep.FlushStepExecution flushExecution = new FlushStep.FlushStepExecution(
+        new FlushStep(), contextMock);
+
+    assertThat(flushExecution.run()).isTrue();
+    assertThat(sent).containsExactly("message 0", "message 1", "message 2", "message 3",
+        "message 4");
+  }
+
+  @Test
+  public void testSyncMessageIsSentAfterAsyncMessages() throws Exception {
+    final List<String> sent = new CopyOnWriteArrayList<>();
+    when(hubotServiceMock.sendMessage(any())).thenAnswer(invocation -> {
+      sent.add(((Message) invocation.getArgument(0)).getMessage());
+      return ResponseData.<Void>builder().successful(true).code(200).build();
+    });
+    final SendStep async = new SendStep("async");
+    async.setRoom("room");
+    async.setAsync(true);
+    stepExecution = new SendStep.SendStepExecution(async, contextMock);
+    stepExecution.setHubotService(hubotServiceMock);
+    assertThat(stepExecution.run()).isTrue();
+
+    final SendStep step = new SendStep("sync");
+    step.setRoom("room");
+    stepExecution = new SendStep.SendStepExecution(step, contextMock);
+    stepExecution.setHubotService(hubotServiceMock);
+
+    assertThat(stepExecution.run()).isTrue();
+    assertThat(sent).containsExactly("async", "sync");
+  }
+
+  @Test
+  public void testFlushReportsAsyncFailures() throws Exception {
+    when(hubotServiceMock.sendMessage(any()))
+        .thenReturn(ResponseData.<Void>builder().successful(false).code(500).error("Down").build());
+    final SendStep step = new SendStep("message");
+    step.setRoom("room");
+    step.setAsync(true);
+    stepExecution = new SendStep.SendStepExecution(step, contextMock);
+    stepExecution.setHubotService(hubotServiceMock);
+    assertThat(stepExecution.run()).isTrue();
+
+    final FlushStep.FlushStepExecution flushExecution = new FlushStep.FlushStepExecution(
+        new FlushStep(), contextMock);
+
+    assertThatExceptionOfType(AbortException.class).isThrownBy(flushExecution::run)
+        .withMessageContaining("1 async message(s) failed").withMessageContaining("Down");
+  }
 }
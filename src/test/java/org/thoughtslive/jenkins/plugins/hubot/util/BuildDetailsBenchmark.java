@@ -0,0 +1,67 @@
+package org.thoughtslive.jenkins.plugins.hubot.util;
+
+import hudson.EnvVars;
+import hudson.model.Cause;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.model.TaskListener;
+import java.util.List;
+import java.util.Map;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.thoughtslive.jenkins.plugins.hubot.config.notifications.Type;
+
+/**
+ * Per message build details: token macros, build user and cause, and the notification type.
+ *
+ * @author Naresh Rayapati
+ */
+public class BuildDetailsBenchmark {
+
+  /**
+   * Jenkins instance with one completed build started by a user.
+   */
+  public static class CompletedBuild extends JmhBenchmarkState {
+
+    FreeStyleBuild run;
+
+    EnvVars envVars;
+
+    List<Cause> causes;
+
+    @Override
+    public void setup() throws Exception {
+      final FreeStyleProject job = getJenkins().createProject(FreeStyleProject.class, "job");
+      run = job.scheduleBuild2(0, new Cause.UserIdCause("admin")).get();
+      envVars = run.getEnvironment(TaskListener.NULL);
+      causes = run.getCauses();
+    }
+  }
+
+  @Benchmark
+  public Map expandMacros(final CompletedBuild state) {
+    return Common.expandMacros("BUILD_NUMBER, BUILD_ID, BUILD_URL, BUILD_STATUS", state.run,
+        null, TaskListener.NULL);
+  }
+
+  @Benchmark
+  public String prepareBuildUserName(final CompletedBuild state) {
+    return Common.prepareBuildUserName(state.causes, state.envVars);
+  }
+
+  @Benchmark
+  public String prepareBuildUserId(final CompletedBuild state) {
+    return Common.prepareBuildUserId(state.causes, state.envVars);
+  }
+
+  @Benchmark
+  public String prepareBuildCause(final CompletedBuild state) {
+    return Common.prepareBuildCause(state.causes);
+  }
+
+  @Benchmark
+  public Type fromResults(final CompletedBuild state) {
+    return Type.fromResults(Result.FAILURE, state.run.getResult());
+  }
+}
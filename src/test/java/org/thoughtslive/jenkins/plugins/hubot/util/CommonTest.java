@@ -0,0 +1,33 @@
+package org.thoughtslive.jenkins.plugins.hubot.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test cases for Common class.
+ *
+ * @author Naresh Rayapati
+ */
+public class CommonTest {
+
+  @Test
+  public void testExpandMacrosReusesExpandedTokens() {
+    final ConcurrentMap<String, Future<String>> expanded = new ConcurrentHashMap<>();
+    expanded.put("BUILD_NUMBER\n", CompletableFuture.completedFuture("42"));
+
+    final Map tokens = Common.expandMacros("BUILD_NUMBER, UNKNOWN", mock(Run.class), null,
+        mock(TaskListener.class), expanded);
+
+    assertThat(tokens).containsEntry("BUILD_NUMBER", "42").containsEntry("UNKNOWN", null);
+    assertThat(expanded).containsOnlyKeys("BUILD_NUMBER\n", "UNKNOWN\n");
+  }
+}
@@ -0,0 +1,69 @@
+package org.thoughtslive.jenkins.plugins.hubot.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hudson.EnvVars;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.thoughtslive.jenkins.plugins.hubot.api.Message;
+import org.thoughtslive.jenkins.plugins.hubot.config.HubotSite;
+
+/**
+ * Unit test cases for EnvVarsFilter class.
+ *
+ * @author Naresh Rayapati
+ */
+public class EnvVarsFilterTest {
+
+  private final EnvVars envVars = new EnvVars("BUILD_NUMBER", "1", "JOB_NAME", "job", "GIT_TOKEN",
+      "secret", "PATH", "/bin");
+
+  @Test
+  public void testIncludeAndExclude() {
+    final Map<String, String> view = EnvVarsFilter.of("BUILD_*, JOB_*,GIT_*", "*_TOKEN")
+        .apply(envVars);
+
+    assertThat(view).containsOnlyKeys("BUILD_NUMBER", "JOB_NAME");
+    assertThat(view.get("PATH")).isNull();
+    assertThat(view.get("build_number")).isEqualTo("1");
+  }
+
+  @Test
+  public void testEmptyPatternsSendEverything() {
+    assertThat(EnvVarsFilter.of(" ", null)).isSameAs(EnvVarsFilter.ALL);
+    assertThat(EnvVarsFilter.ALL.apply(envVars)).isSameAs(envVars);
+  }
+
+  @Test
+  public void testFiltersAreCompiledOnce() {
+    assertThat(EnvVarsFilter.of("BUILD_*", null)).isSameAs(EnvVarsFilter.of("BUILD_*", ""));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedFiltersAreDropped() {
+    final EnvVarsFilter first = EnvVarsFilter.of("FIRST_*", null);
+    for (int i = 0; i < 100; i++) {
+      EnvVarsFilter.of("VAR_" + i + "_*", null);
+    }
+
+    assertThat(EnvVarsFilter.of("FIRST_*", null)).isNotSameAs(first);
+  }
+
+  @Test
+  public void testStepPatternsTakePrecedenceOverSite() {
+    final HubotSite site = HubotSite.builder().envVarsInclude("JOB_*").build();
+
+    assertThat(EnvVarsFilter.resolve(null, null, site).accepts("JOB_NAME")).isTrue();
+    assertThat(EnvVarsFilter.resolve("BUILD_*", null, site).accepts("JOB_NAME")).isFalse();
+  }
+
+  @Test
+  public void testSerializesOnlyAcceptedVariables() throws Exception {
+    final Message message = Message.builder()
+        .envVars(EnvVarsFilter.of("JOB_NAME", null).apply(envVars)).build();
+
+    assertThat(new ObjectMapper().writeValueAsString(message))
+        .contains("\"envVars\":{\"JOB_NAME\":\"job\"}");
+  }
+}
@@ -0,0 +1,58 @@
+package org.thoughtslive.jenkins.plugins.hubot.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test cases for FanOut class.
+ *
+ * @author Naresh Rayapati
+ */
+public class FanOutTest {
+
+  @Test
+  public void testResultsInTaskOrderWithinCap() throws Exception {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final List<Callable<Integer>> tasks = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      final int value = i;
+      tasks.add(() -> {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        Thread.sleep(10L * (10 - value));
+        running.decrementAndGet();
+        return value;
+      });
+    }
+
+    final List<Future<Integer>> results = FanOut.invokeAll(tasks, 3, 10_000);
+
+    assertThat(maxRunning.get()).isLessThanOrEqualTo(3);
+    for (int i = 0; i < 10; i++) {
+      assertThat(results.get(i).get()).isEqualTo(i);
+    }
+  }
+
+  @Test
+  public void testUnfinishedTasksAreCancelledAtDeadline() throws Exception {
+    final List<Callable<String>> tasks = new ArrayList<>();
+    tasks.add(() -> "fast");
+    tasks.add(() -> {
+      Thread.sleep(10_000);
+      return "slow";
+    });
+
+    final long start = System.currentTimeMillis();
+    final List<Future<String>> results = FanOut.invokeAll(tasks, 2, 200);
+
+    assertThat(System.currentTimeMillis() - start).isLessThan(5_000);
+    assertThat(results.get(0).get()).isEqualTo("fast");
+    assertThat(results.get(1).isCancelled()).isTrue();
+  }
+}
@@ -0,0 +1,62 @@
+package org.thoughtslive.jenkins.plugins.hubot.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import hudson.EnvVars;
+import hudson.model.Cause;
+import hudson.model.Cause.UserIdCause;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test cases for RunContext class.
+ *
+ * @author Naresh Rayapati
+ */
+public class RunContextTest {
+
+  @Test
+  public void testEnvironmentIsResolvedOnceUntilInvalidated() throws Exception {
+    final Run run = mock(Run.class);
+    final TaskListener listener = mock(TaskListener.class);
+    when(run.getEnvironment(any())).thenReturn(new EnvVars("BUILD_NUMBER", "1"));
+
+    final RunContext context = RunContext.of(run);
+    assertThat(RunContext.of(run)).isSameAs(context);
+    assertThat(context.getEnvironment(listener)).containsEntry("BUILD_NUMBER", "1");
+    context.getEnvironment(listener);
+    context.getEnvironment(listener);
+    verify(run, times(1)).getEnvironment(listener);
+
+    RunContext.invalidateEnvironment(run);
+    context.getEnvironment(listener);
+    verify(run, times(2)).getEnvironment(listener);
+
+    RunContext.remove(run);
+    assertThat(RunContext.of(run)).isNotSameAs(context);
+  }
+
+  @Test
+  public void testCausesAreResolvedOnce() {
+    final Run run = mock(Run.class);
+    final UserIdCause cause = mock(UserIdCause.class);
+    when(cause.getUserName()).thenReturn("Naresh");
+    when(cause.getUserId()).thenReturn("naresh");
+    when(run.getCauses()).thenReturn(Collections.<Cause>singletonList(cause));
+
+    final RunContext context = RunContext.of(run);
+    assertThat(context.getBuildUserName(new EnvVars())).isEqualTo("Naresh");
+    assertThat(context.getBuildUserName(new EnvVars("CHANGE_AUTHOR", "author")))
+        .isEqualTo("author");
+    assertThat(context.getBuildUserId()).isEqualTo("naresh");
+    assertThat(context.getBuildCause()).isEqualTo("Naresh");
+    verify(run, times(1)).getCauses();
+  }
+}